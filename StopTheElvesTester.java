@@ -163,6 +163,11 @@ public class StopTheElvesTester extends MarathonAnimatedVis {
         return true;
     }
 
+    public double estimateRunTime() {
+        // One turn per cell
+        return N * N;
+    }
+
     protected double run() throws Exception {
         init();
 
@@ -297,10 +302,7 @@ public class StopTheElvesTester extends MarathonAnimatedVis {
         writeLine(money);
 
         //print grid
-        for (int r = 0; r < N; r++)
-            for (int c = 0; c < N; c++)
-                writeLine("" + grid[r][c]);
-
+        writeCells(grid);
         flush();
         if (!isReadActive()) return -1;
 
@@ -314,21 +316,20 @@ public class StopTheElvesTester extends MarathonAnimatedVis {
         for (numTurns = 1; numTurns <= N * N; numTurns++) {
 
             startTime();
-            String line = readLine();
+            int numTokens = readLineTokens();
             stopTime();
 
             numLastBoxes = 0;
-            String[] temp = line.trim().split(" ");
-            if (temp.length == 1) {
+            if (numTokens == 1) {
                 // do nothing
-            } else if (temp.length % 2 == 1) {
+            } else if (numTokens % 2 == 1) {
                 return fatalError("Cannot parse your output. Uneven number of elements. It should contain coordinates.");
             } else {
                 // Plant the boxes
-                for (int i = 0; i < temp.length; i += 2) {
+                for (int i = 0; i < numTokens; i += 2) {
                     try {
-                        int row = Integer.parseInt(temp[i]);
-                        int col = Integer.parseInt(temp[i + 1]);
+                        int row = getTokenInt(i);
+                        int col = getTokenInt(i + 1);
                         if (col <= 0 || col >= N - 1 || row <= 0 || row >= N - 1)
                             return fatalError("You can not place on the border or outside the grid.");
                         if (grid[row][col] != Empty) {
@@ -401,12 +402,10 @@ public class StopTheElvesTester extends MarathonAnimatedVis {
             if (presents == 0) break; // end simulation when all the presents were stolen.
 
             //output elapsed time, money and the grid
-            writeLine("" + getRunTime());
-            writeLine("" + money);
+            writeLine(getRunTime());
+            writeLine(money);
             //print grid
-            for (int r = 0; r < N; r++)
-                for (int c = 0; c < N; c++)
-                    writeLine("" + grid[r][c]);
+            writeCells(grid);
             flush();
         }
 
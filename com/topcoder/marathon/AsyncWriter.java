@@ -0,0 +1,135 @@
+package com.topcoder.marathon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output stream for the saved transcripts (.in, .out and .err files), that moves disk writes
+ * (and optional gzip compression) out of the interactive loop. Bytes are copied into a large
+ * buffer, and full buffers are handed to a background task through a lock-free queue, which
+ * writes them in order. flush() hands the buffered bytes to that task too, but doesn't wait
+ * for the disk; close() writes everything that is pending, in order, before closing the file.
+ *
+ * Used by a single producer at a time (the tester, or the error reader of the solution).
+ */
+class AsyncWriter extends OutputStream {
+    private static final int bufferSize = 1 << 18;
+    private static final int maxPending = 16;
+
+    private final OutputStream out;
+    private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<byte[]>();
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<byte[]>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Runnable drainTask = this::drain;
+    private volatile IOException error;
+    private byte[] buffer = new byte[1 << 12];
+    private int count;
+    private boolean closed;
+
+    public AsyncWriter(File file, boolean gzip) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        this.out = gzip ? new GZIPOutputStream(os, 1 << 16) : os;
+    }
+
+    /**
+     * Name of a transcript file, with the .gz suffix if it is compressed.
+     */
+    public static String fileName(String name, boolean gzip) {
+        return gzip ? name + ".gz" : name;
+    }
+
+    public void write(int b) throws IOException {
+        if (count == buffer.length) makeRoom();
+        buffer[count++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) makeRoom();
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void makeRoom() throws IOException {
+        // Small transcripts (like most .err files) don't need a large buffer
+        if (buffer.length < bufferSize) buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 4, bufferSize));
+        else handOff();
+    }
+
+    private void handOff() throws IOException {
+        if (error != null) throw error;
+        if (closed) throw new IOException("Stream closed");
+        if (count == 0) return;
+        // Keep memory bounded if the disk can't keep up
+        while (pending.get() >= maxPending) {
+            LockSupport.parkNanos(100_000);
+        }
+        submit();
+    }
+
+    private void submit() {
+        byte[] b = count == bufferSize ? buffer : Arrays.copyOf(buffer, count);
+        pending.incrementAndGet();
+        queue.offer(b);
+        if (b == buffer) {
+            byte[] next = free.poll();
+            buffer = next == null ? new byte[bufferSize] : next;
+        }
+        count = 0;
+        if (draining.compareAndSet(false, true)) Threads.execute(drainTask);
+    }
+
+    private void drain() {
+        while (true) {
+            byte[] b;
+            while ((b = queue.poll()) != null) {
+                try {
+                    if (error == null) out.write(b);
+                } catch (IOException e) {
+                    error = e;
+                }
+                if (b.length == bufferSize) free.offer(b);
+                pending.decrementAndGet();
+            }
+            draining.set(false);
+            // Something may have been queued after the last poll, but before draining was cleared
+            if (queue.isEmpty() || !draining.compareAndSet(false, true)) return;
+        }
+    }
+
+    /**
+     * Queues the buffered bytes, without waiting for the disk (see close()). If too many
+     * buffers are already pending, the bytes are kept and go with the next hand off.
+     */
+    public void flush() throws IOException {
+        if (error != null) throw error;
+        if (!closed && count > 0 && pending.get() < maxPending) submit();
+    }
+
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            handOff();
+        } finally {
+            closed = true;
+            while (pending.get() > 0) {
+                LockSupport.parkNanos(100_000);
+            }
+            out.close();
+        }
+        if (error != null) throw error;
+    }
+}
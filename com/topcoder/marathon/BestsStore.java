@@ -0,0 +1,208 @@
+package com.topcoder.marathon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Best scores of each seed (-bests file), loaded once per batch. Lookups only use memory;
+ * improvements are appended to a journal (file.journal), which is merged into the bests
+ * file (compaction) when it gets as large as the number of seeds, and at close(), which
+ * leaves the journal empty.
+ *
+ * The journal is locked (FileChannel.lock()) while it is read or written, so several
+ * controllers can share the same bests file. Each one reads what the others appended before
+ * writing its own improvements. The first line of the journal identifies its generation,
+ * which changes at each compaction (or is gone, if the journal was emptied), so the other
+ * controllers know they must reload.
+ */
+class BestsStore {
+    private static final int minCompactLines = 1000;
+
+    private final File file;
+    private final File journalFile;
+    private final boolean isMaximize;
+    private final double errorScore;
+    private final Map<Long, Double> bests = new ConcurrentHashMap<Long, Double>();
+    private FileChannel journal;
+    private String generation;
+    private long journalPos;
+    private int journalLines;
+    private boolean loaded, changed;
+
+    public BestsStore(File file, boolean isMaximize, double errorScore) throws IOException {
+        this.file = file;
+        this.journalFile = new File(file.getPath() + ".journal");
+        this.isMaximize = isMaximize;
+        this.errorScore = errorScore;
+        journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = journal.lock();
+        try {
+            catchUp();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Return the previous best of the seed (null if there is none), and keep the score if
+     * it improves it.
+     */
+    public Double check(long seed, double score) {
+        Double best = bests.get(seed);
+        if (score != errorScore && isBetter(score, best)) improve(seed, score);
+        return best;
+    }
+
+    private boolean isBetter(double score, Double best) {
+        return best == null || (isMaximize && score > best) || (!isMaximize && score < best);
+    }
+
+    private synchronized void improve(long seed, double score) {
+        try {
+            FileLock lock = journal.lock();
+            try {
+                catchUp();
+                if (!isBetter(score, bests.get(seed))) return;
+                bests.put(seed, score);
+                changed = true;
+                if (generation == null) startJournal();
+                byte[] line = (seed + "=" + score + "\n").getBytes();
+                if (journal.size() > journalPos) journal.truncate(journalPos);
+                journal.write(ByteBuffer.wrap(line), journalPos);
+                journalPos += line.length;
+                if (++journalLines >= Math.max(minCompactLines, bests.size())) {
+                    compact();
+                    startJournal();
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Read what other controllers appended to the journal, reloading the bests file after a 
+    //compaction (scores only improve, so everything is merged, keeping the best)
+    private void catchUp() throws IOException {
+        long size = journal.size();
+        String current = size == 0 ? null : readJournalLine(0);
+        if (!loaded || !Objects.equals(current, generation)) {
+            loaded = true;
+            load();
+            generation = current;
+            journalPos = current == null ? 0 : current.length() + 1;
+            journalLines = 0;
+        }
+        if (size <= journalPos) return;
+        ByteBuffer b = ByteBuffer.allocate((int) (size - journalPos));
+        while (b.hasRemaining() && journal.read(b, journalPos + b.position()) > 0) {
+        }
+        // Only complete lines are used (a partial line, left by a crash, is dropped by the next append)
+        int end = b.position();
+        while (end > 0 && b.get(end - 1) != '\n') end--;
+        for (String line : new String(b.array(), 0, end).split("\n")) {
+            merge(line);
+            journalLines++;
+        }
+        journalPos += end;
+    }
+
+    private void merge(String line) {
+        String[] s = line.split("=");
+        if (s.length != 2) return;
+        try {
+            long seed = Long.parseLong(s[0]);
+            double score = Double.parseDouble(s[1]);
+            if (isBetter(score, bests.get(seed))) bests.put(seed, score);
+        } catch (NumberFormatException e) {
+        }
+    }
+
+    private String readJournalLine(long pos) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        ByteBuffer b = ByteBuffer.allocate(64);
+        while (journal.read(b, pos) > 0) {
+            for (int i = 0; i < b.position(); i++) {
+                if (b.get(i) == '\n') return line.toString();
+                line.write(b.get(i));
+            }
+            pos += b.position();
+            b.clear();
+        }
+        return null;
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) return;
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line = null;
+            while ((line = in.readLine()) != null) {
+                merge(line);
+            }
+        }
+    }
+
+    private void startJournal() throws IOException {
+        generation = "#" + Long.toHexString(System.nanoTime() ^ Double.doubleToLongBits(Math.random()));
+        byte[] line = (generation + "\n").getBytes();
+        journal.truncate(0);
+        journal.write(ByteBuffer.wrap(line), 0);
+        journalPos = line.length;
+        journalLines = 0;
+    }
+
+    //Rewrite the bests file with all scores (merging the current file first, as another
+    //controller may have compacted a journal this one didn't see)
+    private void compact() throws IOException {
+        load();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        BufferedWriter out = new BufferedWriter(new FileWriter(tmpFile));
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Long, Double> e : new TreeMap<Long, Double>(bests).entrySet()) {
+            sb.delete(0, sb.length());
+            sb.append(e.getKey()).append('=').append(e.getValue());
+            out.write(sb.toString());
+            out.newLine();
+        }
+        out.close();
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Merge the journal into the bests file, if this controller improved anything, and empty
+     * the journal. It is truncated rather than deleted, as other controllers may have it open.
+     */
+    public synchronized void close() {
+        try {
+            if (changed) {
+                FileLock lock = journal.lock();
+                try {
+                    catchUp();
+                    compact();
+                    journal.truncate(0);
+                } finally {
+                    lock.release();
+                }
+            }
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.topcoder.marathon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Bounded in-memory pipe, used to connect in-process solutions to the tester. Unlike
+ * PipedInputStream/PipedOutputStream, it doesn't depend on which threads read or write.
+ */
+class BytePipe {
+    private final byte[] buffer;
+    private int readPos, count;
+    private boolean writeClosed, readClosed;
+
+    public final InputStream in = new InputStream() {
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            return BytePipe.this.read(b, off, len);
+        }
+
+        public int available() {
+            synchronized (BytePipe.this) {
+                return count;
+            }
+        }
+
+        public void close() {
+            closeRead();
+        }
+    };
+
+    public final OutputStream out = new OutputStream() {
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            BytePipe.this.write(b, off, len);
+        }
+
+        public void close() {
+            closeWrite();
+        }
+    };
+
+    public BytePipe(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    private synchronized void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            while (count == buffer.length && !readClosed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            if (readClosed || writeClosed) throw new IOException("Pipe closed");
+            int pos = (readPos + count) % buffer.length;
+            int n = Math.min(len, Math.min(buffer.length - count, buffer.length - pos));
+            System.arraycopy(b, off, buffer, pos, n);
+            count += n;
+            off += n;
+            len -= n;
+            notifyAll();
+        }
+    }
+
+    private synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (count == 0) {
+            if (writeClosed || readClosed) return -1;
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+        int n = Math.min(len, Math.min(count, buffer.length - readPos));
+        System.arraycopy(buffer, readPos, b, off, n);
+        readPos = (readPos + n) % buffer.length;
+        count -= n;
+        notifyAll();
+        return n;
+    }
+
+    public synchronized void closeWrite() {
+        writeClosed = true;
+        notifyAll();
+    }
+
+    public synchronized void closeRead() {
+        readClosed = true;
+        notifyAll();
+    }
+}
@@ -1,11 +1,14 @@
 package com.topcoder.marathon;
 
-import sun.java2d.SunGraphics2D;
-
 import java.awt.*;
 import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ImageObserver;
@@ -19,6 +22,7 @@ public class CachedGraphics2D extends Graphics2D {
     private Graphics2D graphics;
     private AffineTransform initialTransform;
     private ArrayList<CacheEntity> cache = new ArrayList<>();
+    private AffineTransform transform = new AffineTransform();
 
     public CachedGraphics2D(Graphics2D graphics) {
         this.graphics = graphics;
@@ -26,13 +30,46 @@ public class CachedGraphics2D extends Graphics2D {
     }
 
     public void build(Graphics2D g, AffineTransform transform) {
-        if (transform == null) g.setTransform(initialTransform);
-        else g.setTransform(transform);
-        for (CacheEntity c : cache) c.apply(g);
+        build(g, transform, false);
+    }
+
+    public void build(Graphics2D g, AffineTransform transform, boolean preview) {
+        build(g, transform, preview, null);
+    }
+
+    // A preview keeps the (speed oriented) hints of the target graphics, ignoring recorded ones.
+    // If lodBounds (in device space) is given, fills smaller than a pixel inside it are merged into a raster.
+    public void build(Graphics2D g, AffineTransform transform, boolean preview, Rectangle lodBounds) {
+        if (transform == null) transform = initialTransform;
+        g.setTransform(transform);
+        LodRaster lod = null;
+        if (lodBounds != null && !lodBounds.isEmpty() && transform.getShearX() == 0 && transform.getShearY() == 0) {
+            lod = LodRaster.get();
+            lod.begin(lodBounds, transform);
+        }
+        Color color = g.getColor();
+        for (CacheEntity c : cache) {
+            if (preview && c instanceof RenderHintsEntity) continue;
+            if (lod != null) {
+                if (c instanceof ColorEntity) color = ((ColorEntity) c).color;
+                else if (c.addTo(lod, color)) continue;
+                else if (c.isDrawing()) lod.flush(g);
+            }
+            c.apply(g);
+        }
+        if (lod != null) lod.flush(g);
     }
 
     abstract class CacheEntity {
         public abstract void apply(Graphics2D g);
+
+        public boolean isDrawing() {
+            return true;
+        }
+
+        public boolean addTo(LodRaster lod, Color color) {
+            return false;
+        }
     }
 
     abstract class TwoPointEntity extends CacheEntity {
@@ -69,6 +106,11 @@ public class CachedGraphics2D extends Graphics2D {
         public void apply(Graphics2D g) {
             g.fillRect(x1, y1, x2, y2);
         }
+
+        @Override
+        public boolean addTo(LodRaster lod, Color color) {
+            return lod.add(x1, y1, x2, y2, color);
+        }
     }
 
     class DrawRectEntity extends TwoPointEntity {
@@ -89,6 +131,11 @@ public class CachedGraphics2D extends Graphics2D {
             this.color = color;
         }
 
+        @Override
+        public boolean isDrawing() {
+            return false;
+        }
+
         @Override
         public void apply(Graphics2D g) {
             g.setColor(color);
@@ -102,6 +149,11 @@ public class CachedGraphics2D extends Graphics2D {
             this.stroke = stroke;
         }
 
+        @Override
+        public boolean isDrawing() {
+            return false;
+        }
+
         @Override
         public void apply(Graphics2D g) {
             g.setStroke(stroke);
@@ -115,6 +167,11 @@ public class CachedGraphics2D extends Graphics2D {
             this.map = map;
         }
 
+        @Override
+        public boolean isDrawing() {
+            return false;
+        }
+
         @Override
         public void apply(Graphics2D g) {
             g.setRenderingHints(map);
@@ -128,6 +185,11 @@ public class CachedGraphics2D extends Graphics2D {
             this.font = font;
         }
 
+        @Override
+        public boolean isDrawing() {
+            return false;
+        }
+
         @Override
         public void apply(Graphics2D g) {
             g.setFont(font);
@@ -165,24 +227,113 @@ public class CachedGraphics2D extends Graphics2D {
         public void apply(Graphics2D g) {
             g.drawImage(image, x1, y1, x2, y2, imageObserver);
         }
+
+        @Override
+        public boolean addTo(LodRaster lod, Color color) {
+            return lod.add(x1, y1, x2, y2, image);
+        }
+    }
+
+    class ShapeEntity extends CacheEntity {
+        private Shape shape;
+        private boolean fill;
+
+        private Rectangle2D bounds;
+
+        public ShapeEntity(Shape shape, boolean fill) {
+            this.shape = shape;
+            this.fill = fill;
+            if (fill) bounds = shape.getBounds2D();
+        }
+
+        @Override
+        public void apply(Graphics2D g) {
+            if (fill) g.fill(shape);
+            else g.draw(shape);
+        }
+
+        @Override
+        public boolean addTo(LodRaster lod, Color color) {
+            return fill && lod.add(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight(), color);
+        }
     }
 
-    class SetTransformEntity extends CacheEntity {
+    class TransformedImageEntity extends CacheEntity {
+        private Image image;
         private AffineTransform transform;
+        private ImageObserver imageObserver;
+
+        private Rectangle2D bounds;
 
-        public SetTransformEntity(AffineTransform transform) {
+        public TransformedImageEntity(Image image, AffineTransform transform, ImageObserver imageObserver) {
+            this.image = image;
+            this.transform = transform;
+            this.imageObserver = imageObserver;
+            bounds = transform.createTransformedShape(new Rectangle(0, 0, image.getWidth(null), image.getHeight(null))).getBounds2D();
+        }
+
+        @Override
+        public void apply(Graphics2D g) {
+            g.drawImage(image, transform, imageObserver);
+        }
+
+        @Override
+        public boolean addTo(LodRaster lod, Color color) {
+            return lod.add(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight(), image);
+        }
+    }
+
+    // Only used for ops that can't be folded into their coordinates, e.g. strokes under rotation.
+    class TransformedEntity extends CacheEntity {
+        private AffineTransform transform;
+        private CacheEntity entity;
+
+        public TransformedEntity(AffineTransform transform, CacheEntity entity) {
             this.transform = transform;
+            this.entity = entity;
         }
 
         @Override
         public void apply(Graphics2D g) {
-            g.setTransform(transform);
+            AffineTransform saved = g.getTransform();
+            g.transform(transform);
+            entity.apply(g);
+            g.setTransform(saved);
         }
     }
 
+    private boolean isTranslation() {
+        return (transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+    }
+
+    private boolean isAxisAligned() {
+        return transform.getShearX() == 0 && transform.getShearY() == 0;
+    }
+
+    private static boolean isInt(double v) {
+        return v == Math.rint(v) && Math.abs(v) < Integer.MAX_VALUE;
+    }
+
+    private void addTransformed(CacheEntity entity) {
+        cache.add(new TransformedEntity(new AffineTransform(transform), entity));
+    }
+
+    private Rectangle2D foldRect(double x, double y, double w, double h) {
+        Point2D p1 = transform.transform(new Point2D.Double(x, y), null);
+        Point2D p2 = transform.transform(new Point2D.Double(x + w, y + h), null);
+        Rectangle2D rc = new Rectangle2D.Double();
+        rc.setFrameFromDiagonal(p1, p2);
+        return rc;
+    }
+
+    private static boolean isIntRect(Rectangle2D rc) {
+        return isInt(rc.getX()) && isInt(rc.getY()) && isInt(rc.getWidth()) && isInt(rc.getHeight());
+    }
+
     @Override
     public void draw(Shape shape) {
-        throw new RuntimeException("not implemented");
+        if (isTranslation()) cache.add(new ShapeEntity(transform.createTransformedShape(shape), false));
+        else addTransformed(new ShapeEntity(new Path2D.Double(shape), false));
     }
 
     @Override
@@ -212,7 +363,8 @@ public class CachedGraphics2D extends Graphics2D {
 
     @Override
     public void drawString(String s, float x, float y) {
-        cache.add(new StringEntity(s, x, y));
+        if (isTranslation()) cache.add(new StringEntity(s, x + (float) transform.getTranslateX(), y + (float) transform.getTranslateY()));
+        else addTransformed(new StringEntity(s, x, y));
     }
 
     @Override
@@ -227,7 +379,27 @@ public class CachedGraphics2D extends Graphics2D {
 
     @Override
     public boolean drawImage(Image image, int x1, int y1, int x2, int y2, ImageObserver imageObserver) {
-        cache.add(new ImageEntity(image, x1, y1, x2, y2, imageObserver));
+        if (transform.isIdentity()) {
+            cache.add(new ImageEntity(image, x1, y1, x2, y2, imageObserver));
+            return true;
+        }
+        if (isAxisAligned() && transform.getScaleX() > 0 && transform.getScaleY() > 0) {
+            Rectangle2D rc = foldRect(x1, y1, x2, y2);
+            if (isIntRect(rc)) {
+                cache.add(new ImageEntity(image, (int) rc.getX(), (int) rc.getY(), (int) rc.getWidth(), (int) rc.getHeight(), imageObserver));
+                return true;
+            }
+        }
+        int w = image.getWidth(null);
+        int h = image.getHeight(null);
+        if (w > 0 && h > 0) {
+            AffineTransform t = new AffineTransform(transform);
+            t.translate(x1, y1);
+            t.scale(x2 / (double) w, y2 / (double) h);
+            cache.add(new TransformedImageEntity(image, t, imageObserver));
+        } else {
+            addTransformed(new ImageEntity(image, x1, y1, x2, y2, imageObserver));
+        }
         return true;
     }
 
@@ -268,7 +440,7 @@ public class CachedGraphics2D extends Graphics2D {
 
     @Override
     public void fill(Shape shape) {
-        throw new RuntimeException("not implemented");
+        cache.add(new ShapeEntity(transform.createTransformedShape(shape), true));
     }
 
     @Override
@@ -327,8 +499,8 @@ public class CachedGraphics2D extends Graphics2D {
     }
 
     @Override
-    public void translate(int i, int i1) {
-        throw new RuntimeException("not implemented");
+    public void translate(int x, int y) {
+        transform.translate(x, y);
     }
 
     @Override
@@ -401,17 +573,42 @@ public class CachedGraphics2D extends Graphics2D {
 
     @Override
     public void drawLine(int x1, int y1, int x2, int y2) {
-        cache.add(new DrawLineEntity(x1, y1, x2, y2));
+        if (transform.isIdentity()) {
+            cache.add(new DrawLineEntity(x1, y1, x2, y2));
+        } else if (isTranslation()) {
+            double tx = transform.getTranslateX();
+            double ty = transform.getTranslateY();
+            if (isInt(tx) && isInt(ty)) cache.add(new DrawLineEntity(x1 + (int) tx, y1 + (int) ty, x2 + (int) tx, y2 + (int) ty));
+            else cache.add(new ShapeEntity(new Line2D.Double(x1 + tx, y1 + ty, x2 + tx, y2 + ty), false));
+        } else {
+            addTransformed(new DrawLineEntity(x1, y1, x2, y2));
+        }
     }
 
     @Override
     public void fillRect(int x1, int y1, int x2, int y2) {
-        cache.add(new FillRectEntity(x1, y1, x2, y2));
+        if (transform.isIdentity()) {
+            cache.add(new FillRectEntity(x1, y1, x2, y2));
+        } else if (isAxisAligned()) {
+            Rectangle2D rc = foldRect(x1, y1, x2, y2);
+            if (isIntRect(rc)) cache.add(new FillRectEntity((int) rc.getX(), (int) rc.getY(), (int) rc.getWidth(), (int) rc.getHeight()));
+            else cache.add(new ShapeEntity(rc, true));
+        } else {
+            cache.add(new ShapeEntity(transform.createTransformedShape(new Rectangle(x1, y1, x2, y2)), true));
+        }
     }
 
     @Override
     public void drawRect(int x1, int y1, int x2, int y2) {
-        cache.add(new DrawRectEntity(x1, y1, x2, y2));
+        if (transform.isIdentity()) {
+            cache.add(new DrawRectEntity(x1, y1, x2, y2));
+        } else if (isTranslation()) {
+            Rectangle2D rc = foldRect(x1, y1, x2, y2);
+            if (isIntRect(rc)) cache.add(new DrawRectEntity((int) rc.getX(), (int) rc.getY(), (int) rc.getWidth(), (int) rc.getHeight()));
+            else cache.add(new ShapeEntity(rc, false));
+        } else {
+            addTransformed(new DrawRectEntity(x1, y1, x2, y2));
+        }
     }
 
     @Override
@@ -465,44 +662,53 @@ public class CachedGraphics2D extends Graphics2D {
     }
 
     @Override
-    public void translate(double v, double v1) {
-        throw new RuntimeException("not implemented");
+    public void translate(double x, double y) {
+        transform.translate(x, y);
     }
 
     @Override
-    public void rotate(double v) {
-        throw new RuntimeException("not implemented");
+    public void rotate(double theta) {
+        transform.rotate(theta);
     }
 
     @Override
-    public void rotate(double v, double v1, double v2) {
-        throw new RuntimeException("not implemented");
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
     }
 
     @Override
-    public void scale(double v, double v1) {
-        throw new RuntimeException("not implemented");
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
     }
 
     @Override
-    public void shear(double v, double v1) {
-        throw new RuntimeException("not implemented");
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
     }
 
     @Override
     public void transform(AffineTransform affineTransform) {
-        throw new RuntimeException("not implemented");
+        transform.concatenate(affineTransform);
     }
 
+    // Transforms are tracked relative to the initial transform and folded into the recorded ops,
+    // so the replay doesn't need to change the transform of the target graphics. As for any
+    // Graphics2D, the transforms set and returned here are the full device transforms.
     @Override
     public void setTransform(AffineTransform affineTransform) {
-        graphics.setTransform(affineTransform);
-        cache.add(new SetTransformEntity(affineTransform));
+        try {
+            transform = initialTransform.createInverse();
+            transform.concatenate(affineTransform);
+        } catch (NoninvertibleTransformException e) {
+            transform = new AffineTransform(affineTransform);
+        }
     }
 
     @Override
     public AffineTransform getTransform() {
-        return graphics.getTransform();
+        AffineTransform t = new AffineTransform(initialTransform);
+        t.concatenate(transform);
+        return t;
     }
 
     @Override
@@ -0,0 +1,212 @@
+package com.topcoder.marathon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of generated test cases (-caseCache folder). After generate(), the fields
+ * declared by the concrete tester (and its superclasses outside this package) are saved,
+ * together with the state of rnd, so a later run of the same seed restores them instead of
+ * generating again. Files are read through a memory mapping.
+ *
+ * Entries are stored in folder/TesterClass/version/seed.case, where version is a hash of the
+ * bytecode of the tester classes and of the problem specific parameters, so any change to
+ * the generator (or its parameters) uses a new, empty folder. Testers with fields that
+ * are not Serializable after generate() are not cached. The cache is not used while the
+ * visualizer is enabled, as generate() also sets up the visualizer there.
+ */
+class CaseCache {
+    private static final Map<String, CaseCache> caches = new ConcurrentHashMap<String, CaseCache>();
+
+    private final File folder;
+    private final List<Field> fields;
+
+    private CaseCache(File folder, List<Field> fields) {
+        this.folder = folder;
+        this.fields = fields;
+    }
+
+    /**
+     * Cache for the given tester, or null if it is disabled or can't be used.
+     */
+    static CaseCache get(MarathonTester tester, Parameters parameters) {
+        if (!parameters.isDefined(Parameters.caseCache)) return null;
+        if (tester instanceof MarathonVis && ((MarathonVis) tester).hasVis()) return null;
+        String s = parameters.getStringNull(Parameters.caseCache);
+        Class<?> c = tester.getClass();
+        String key = s + "|" + c.getName();
+        CaseCache cache = caches.get(key);
+        if (cache == null) {
+            cache = create(new File(s == null ? "caseCache" : s), c, parameters);
+            caches.putIfAbsent(key, cache);
+            cache = caches.get(key);
+        }
+        return cache.fields == null ? null : cache;
+    }
+
+    private static CaseCache create(File root, Class<?> c, Parameters parameters) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            List<Field> fields = new ArrayList<Field>();
+            for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+                boolean framework = k.getPackage() != null && k.getPackage().getName().equals(MarathonTester.class.getPackage().getName());
+                if (!framework) {
+                    for (Field f : k.getDeclaredFields()) {
+                        int m = f.getModifiers();
+                        if (Modifier.isStatic(m) || Modifier.isTransient(m)) continue;
+                        f.setAccessible(true);
+                        fields.add(f);
+                    }
+                }
+                if (!update(md, k)) return new CaseCache(null, null);
+                if (k == MarathonTester.class) break;
+            }
+            md.update(parameters.getProblemParameters().toString().getBytes());
+            StringBuilder version = new StringBuilder();
+            byte[] h = md.digest();
+            for (int i = 0; i < 8; i++) {
+                version.append(String.format("%02x", h[i]));
+            }
+            File folder = new File(new File(root, c.getName()), version.toString());
+            folder.mkdirs();
+            return new CaseCache(folder, fields);
+        } catch (Exception e) {
+            return new CaseCache(null, null);
+        }
+    }
+
+    // Add the bytecode of the class (and its nested classes) to the version hash
+    private static boolean update(MessageDigest md, Class<?> k) throws IOException {
+        ClassLoader loader = k.getClassLoader();
+        if (loader == null) return false;
+        try (InputStream in = loader.getResourceAsStream(k.getName().replace('.', '/') + ".class")) {
+            if (in == null) return false;
+            md.update(in.readAllBytes());
+        }
+        for (int i = 1;; i++) {
+            try (InputStream in = loader.getResourceAsStream(k.getName().replace('.', '/') + "$" + i + ".class")) {
+                if (in == null) break;
+                md.update(in.readAllBytes());
+            }
+        }
+        Class<?>[] nested = k.getDeclaredClasses();
+        Arrays.sort(nested, (a, b) -> a.getName().compareTo(b.getName()));
+        for (Class<?> n : nested) {
+            if (!update(md, n)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Restore the generated state of the seed, returning false if it is not in the cache.
+     */
+    boolean load(MarathonTester tester, long seed) {
+        File file = new File(folder, seed + ".case");
+        if (!file.exists()) return false;
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Object[] values;
+            try (ObjectInputStream in = new SnapshotInputStream(new InputStream() {
+                public int read() {
+                    return data.hasRemaining() ? data.get() & 0xff : -1;
+                }
+
+                public int read(byte[] b, int off, int len) {
+                    if (!data.hasRemaining()) return -1;
+                    len = Math.min(len, data.remaining());
+                    data.get(b, off, len);
+                    return len;
+                }
+            })) {
+                values = (Object[]) in.readObject();
+            }
+            if (values.length != fields.size() + 1) return false;
+            for (int i = 0; i < fields.size(); i++) {
+                fields.get(i).set(tester, values[i]);
+            }
+            tester.rnd = (SecureRandom) values[fields.size()];
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Save the generated state of the seed (nothing is saved if some value is not Serializable).
+     */
+    void store(MarathonTester tester, long seed) {
+        try {
+            Object[] values = new Object[fields.size() + 1];
+            for (int i = 0; i < fields.size(); i++) {
+                values[i] = fields.get(i).get(tester);
+                if (values[i] != null && !(values[i] instanceof Serializable)) return;
+            }
+            values[fields.size()] = tester.rnd;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new SnapshotOutputStream(bytes)) {
+                out.writeObject(values);
+            }
+            File tmp = File.createTempFile("seed" + seed + ".", ".tmp", folder);
+            Files.write(tmp.toPath(), bytes.toByteArray());
+            Files.move(tmp.toPath(), new File(folder, seed + ".case").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+        }
+    }
+
+    // Security providers (referenced by rnd) are large, so only their name is stored
+    private static class ProviderName implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String name;
+
+        ProviderName(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class SnapshotOutputStream extends ObjectOutputStream {
+        SnapshotOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        protected Object replaceObject(Object obj) {
+            if (obj instanceof Provider && Security.getProvider(((Provider) obj).getName()) == obj) return new ProviderName(((Provider) obj).getName());
+            return obj;
+        }
+    }
+
+    private static class SnapshotInputStream extends ObjectInputStream {
+        SnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        protected Object resolveObject(Object obj) throws IOException {
+            if (!(obj instanceof ProviderName)) return obj;
+            Provider provider = Security.getProvider(((ProviderName) obj).name);
+            if (provider == null) throw new IOException("Missing provider " + ((ProviderName) obj).name);
+            return provider;
+        }
+    }
+}
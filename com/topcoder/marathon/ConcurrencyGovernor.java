@@ -0,0 +1,199 @@
+package com.topcoder.marathon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Number of active workers for -threads auto. Running as many solutions as there are cores
+ * can make each of them slower (SMT, turbo, shared caches), so run times are measured against
+ * a calibration, and the number of workers is adapted:
+ *
+ *  - Calibration: a probe seed is run alone a few times (after a warm-up run, which is not
+ *    used), its median run time is the baseline.
+ *  - Starting with a single worker, each level runs some test cases and a few probes (the
+ *    probe seed again, running along with the other workers). The run time inflation is the
+ *    median probe run time compared to the baseline.
+ *  - One more worker is added while the inflation stays under the limit (-maxRunTimeError)
+ *    and the throughput (seeds per hour) improves. Otherwise the previous level is kept.
+ *  - After that, probes are repeated from time to time, and a worker is removed if the
+ *    inflation goes above the limit. Otherwise one more worker is tried again (as above),
+ *    up to the maximum. No probes are run once all the test cases have been handed out.
+ *
+ * Decisions are logged to the console.
+ */
+class ConcurrencyGovernor {
+    private static final int calibrationRuns = 3;
+    private static final int probesPerLevel = 3;
+    private static final int recheckCases = 10;
+    private static final double minGain = 0.02;
+
+    private final int maxWorkers;
+    private final double maxError;
+    private final long probeSeed;
+    private int limit = 1;
+    private int active;
+    private boolean settled;
+    private double baseline = -1;
+    private final List<Long> probeTimes = new ArrayList<Long>();
+    private int probesPending = calibrationRuns + 1;
+    private boolean warmedUp;
+    private int probesRunning;
+    private boolean seedsDone;
+    private int levelCases, casesSinceCheck;
+    private long levelStart;
+    private double prevThroughput = -1;
+
+    /**
+     * maxError is a fraction of the calibrated run time (0.05 for 5%).
+     */
+    public ConcurrencyGovernor(int maxWorkers, double maxError, long probeSeed) {
+        this.maxWorkers = maxWorkers;
+        this.maxError = maxError;
+        this.probeSeed = probeSeed;
+    }
+
+    public long getProbeSeed() {
+        return probeSeed;
+    }
+
+    /**
+     * Wait until the worker can run. Returns true if it should run the probe seed (and then
+     * call probeDone()), otherwise it runs a test case and calls caseDone(), or cancel() if
+     * there is none left.
+     */
+    public synchronized boolean acquire() throws InterruptedException {
+        while (active >= limit) {
+            wait();
+        }
+        active++;
+        if (probesPending > 0 && !seedsDone) {
+            probesPending--;
+            probesRunning++;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void probeDone(long runTime) {
+        active--;
+        probesRunning--;
+        if (!warmedUp) {
+            warmedUp = true;
+            notifyAll();
+            return;
+        }
+        probeTimes.add(runTime);
+        levelCases++;
+        if (baseline < 0) {
+            if (probeTimes.size() == calibrationRuns) {
+                baseline = Math.max(1, median());
+                log("calibration with seed " + probeSeed + ", run time " + (long) baseline + " ms");
+                startLevel();
+            }
+        } else {
+            evaluate();
+        }
+        notifyAll();
+    }
+
+    public synchronized void caseDone() {
+        active--;
+        levelCases++;
+        casesSinceCheck++;
+        evaluate();
+        notifyAll();
+    }
+
+    /**
+     * Called instead of caseDone() when there is no test case left, which also stops the probes.
+     */
+    public synchronized void cancel() {
+        active--;
+        seedsDone = true;
+        probesPending = 0;
+        notifyAll();
+    }
+
+    private void startLevel() {
+        levelCases = 0;
+        levelStart = System.nanoTime();
+        probeTimes.clear();
+        probesPending = limit == 1 ? 0 : probesPerLevel;
+    }
+
+    private void evaluate() {
+        if (baseline < 0) return;
+        if (!settled) {
+            if (levelCases < 3 * limit) return;
+            if (limit > 1 && probeTimes.size() < probesPerLevel) return;
+            double inflation = limit == 1 ? 0 : median() / baseline - 1;
+            double throughput = levelCases * 3600e9 / Math.max(1, System.nanoTime() - levelStart);
+            log(limit + " workers, run time inflation " + percent(inflation) + ", " + Math.round(throughput) + " seeds/hour");
+            if (inflation > maxError) {
+                settle(limit - 1, "run time inflation above " + percent(maxError));
+            } else if (prevThroughput >= 0 && throughput < prevThroughput * (1 + minGain)) {
+                settle(limit - 1, "no throughput gain");
+            } else if (limit >= maxWorkers) {
+                settle(limit, "maximum number of workers");
+            } else {
+                prevThroughput = throughput;
+                limit++;
+                startLevel();
+            }
+        } else if (probesPending == 0 && probesRunning == 0 && probeTimes.isEmpty()) {
+            if (seedsDone || casesSinceCheck < recheckCases * limit) return;
+            casesSinceCheck = 0;
+            // A single worker runs alone, like the calibration, so it doesn't need probes
+            if (limit > 1) probesPending = probesPerLevel;
+            else recheck(0);
+        } else if (probeTimes.size() >= probesPerLevel) {
+            double inflation = median() / baseline - 1;
+            probeTimes.clear();
+            recheck(inflation);
+        }
+    }
+
+    private void recheck(double inflation) {
+        if (inflation > maxError) {
+            settle(limit - 1, "run time inflation " + percent(inflation) + " above " + percent(maxError));
+        } else if (limit < maxWorkers) {
+            double throughput = levelCases * 3600e9 / Math.max(1, System.nanoTime() - levelStart);
+            log(limit + " workers, run time inflation " + percent(inflation) + ", " + Math.round(throughput) + " seeds/hour, trying " + (limit + 1) + " workers");
+            settled = false;
+            prevThroughput = throughput;
+            limit++;
+            startLevel();
+        } else {
+            levelCases = 0;
+            levelStart = System.nanoTime();
+        }
+    }
+
+    private void settle(int workers, String reason) {
+        settled = true;
+        limit = Math.max(1, workers);
+        probeTimes.clear();
+        probesPending = 0;
+        casesSinceCheck = 0;
+        levelCases = 0;
+        levelStart = System.nanoTime();
+        log("using " + limit + " workers (" + reason + ")");
+    }
+
+    private double median() {
+        List<Long> l = new ArrayList<Long>(probeTimes);
+        Collections.sort(l);
+        int n = l.size();
+        return n % 2 == 1 ? l.get(n / 2) : (l.get(n / 2 - 1) + l.get(n / 2)) / 2.0;
+    }
+
+    private static String percent(double v) {
+        return String.format("%.1f%%", v * 100);
+    }
+
+    private static void log(String msg) {
+        System.out.println("AUTO THREADS: " + msg);
+        System.out.flush();
+    }
+}
@@ -0,0 +1,97 @@
+package com.topcoder.marathon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CPU affinity of the solution processes (-pinCores), on Linux, using taskset. Each worker
+ * slot gets its own set of cores, and its solution processes are started with
+ * "taskset -c cores command". The tester JVM (including its reader and GC threads) is moved
+ * to the cores that are left, so it doesn't compete with the solutions.
+ */
+class CpuAffinity {
+    private static final String taskset = "taskset";
+
+    /**
+     * Cores this process may run on (from /proc/self/status), or null if they are not known
+     * or taskset is not available.
+     */
+    public static List<Integer> getAllowedCpus() {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux")) return null;
+        try {
+            Process p = new ProcessBuilder(taskset, "-V").redirectErrorStream(true).start();
+            p.getInputStream().readAllBytes();
+            if (p.waitFor() != 0) return null;
+        } catch (Exception e) {
+            return null;
+        }
+        try (BufferedReader in = new BufferedReader(new FileReader(new File("/proc/self/status")))) {
+            String line = null;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("Cpus_allowed_list:")) return parseList(line.substring(line.indexOf(':') + 1).trim());
+            }
+        } catch (Exception e) {
+        }
+        return null;
+    }
+
+    //Parse a cpu list, like "0-3,6,8-9"
+    private static List<Integer> parseList(String s) {
+        List<Integer> cpus = new ArrayList<Integer>();
+        for (String part : s.split(",")) {
+            String[] r = part.trim().split("-");
+            int from = Integer.parseInt(r[0]);
+            int to = Integer.parseInt(r[r.length - 1]);
+            for (int i = from; i <= to; i++) {
+                cpus.add(i);
+            }
+        }
+        return cpus;
+    }
+
+    public static String toList(List<Integer> cpus) {
+        StringBuilder sb = new StringBuilder();
+        for (int cpu : cpus) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(cpu);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Split the last numSlots * coresPerSlot cores into the slots (the first ones, which
+     * usually handle more interrupts, are left to the tester).
+     */
+    public static List<String> assignSlots(List<Integer> cpus, int numSlots, int coresPerSlot) {
+        List<String> slots = new ArrayList<String>();
+        int first = cpus.size() - numSlots * coresPerSlot;
+        for (int i = 0; i < numSlots; i++) {
+            int from = first + i * coresPerSlot;
+            slots.add(toList(cpus.subList(from, from + coresPerSlot)));
+        }
+        return slots;
+    }
+
+    /**
+     * Move all threads of this JVM to the given cores. Threads started later inherit it.
+     */
+    public static boolean pinThisProcess(String cpus) {
+        try {
+            Process p = new ProcessBuilder(taskset, "-a", "-p", "-c", cpus, String.valueOf(ProcessHandle.current().pid())).redirectErrorStream(true).start();
+            p.getInputStream().readAllBytes();
+            return p.waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Command that runs cmd on the given cores.
+     */
+    public static String wrap(String cmd, String cpus) {
+        return taskset + " -c " + cpus + " " + cmd;
+    }
+}
@@ -1,66 +1,283 @@
 package com.topcoder.marathon;
 
-import java.io.BufferedWriter;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the error stream of a solution. The captured output is bounded: the first half of
+ * the capture limit keeps the head, and the second half is a ring buffer with the most
+ * recent bytes (the tail). The .err file receives everything, through a buffered stream
+ * flushed at most every flushInterval, and console echo is limited to echoRate bytes per
+ * second per test case, so a chatty solution can't hold back the other workers on stdout.
+ *
+ * For a solution that handles many cases (-multiCase), the output is split in cases at the
+ * "@ack" lines the solution writes to its error stream when it acknowledges "@begin" and
+ * "@end" (see SolutionServer). Output between two cases is only echoed.
+ */
+class ErrorReader implements Runnable {
+    public static final int defaultCapture = 10_000_000;
+    public static final int defaultEchoRate = 1 << 16;
+    private static final long flushInterval = 250_000_000;
+    private static final byte[] caseMarker = SolutionServer.ack.getBytes();
 
-class ErrorReader extends Thread {
     private final InputStream errorStream;
-    private final BufferedWriter errorWriter;
-    private final StringBuilder sb = new StringBuilder();
+    private OutputStream errorWriter;
     private final boolean printMessages;
-    private static final int maxLength = 10_000_000;
+    private final int headSize, tailSize;
+    private final int echoRate;
+
+    private byte[] head = new byte[1024];
+    private int headLength;
+    private byte[] tail;
+    private int tailPos;
+    private long total;
+
+    private double echoBudget;
+    private long lastEcho, echoDropped;
+    private long lastFlush;
+
+    private boolean multiCase, closed;
+    private int markerPos;
+    private long markers, caseEndMarkers;
 
-    public ErrorReader(InputStream errorStream, boolean printMessages, BufferedWriter errorWriter) {
+    public ErrorReader(InputStream errorStream, boolean printMessages, OutputStream errorWriter, int capture, int echoRate) {
         this.errorStream = errorStream;
         this.printMessages = printMessages;
         this.errorWriter = errorWriter;
+        this.headSize = Math.max(capture / 2, 1);
+        this.tailSize = Math.max(capture - headSize, 1);
+        this.echoRate = echoRate;
+        resetCase();
+    }
+
+    public void start() {
+        Threads.execute(this);
+    }
+
+    /**
+     * Split the output in test cases (-multiCase). Must be called before start().
+     */
+    public void splitCases() {
+        multiCase = true;
     }
 
     public void run() {
-        StringBuilder buffer = new StringBuilder();
         try {
             byte[] ch = new byte[65536];
             int read;
             while ((read = errorStream.read(ch)) > 0) {
-                String s = new String(ch, 0, read);
-                buffer.append(s);
-                if (errorStream.available() == 0) {
-                    write(buffer.toString());
-                    buffer.delete(0, buffer.length());
-                }
+                write(ch, read, errorStream.available() == 0);
             }
         } catch (Exception e) {
         }
-        try {
-            if (buffer.length() > 0) write(buffer.toString());
-        } catch (Exception e) {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            flushEcho();
+            flushFile();
+        }
+    }
+
+    private synchronized void write(byte[] b, int len, boolean idle) {
+        if (!multiCase) {
+            write(b, 0, len, idle);
+            return;
         }
+        //markerPos is the number of bytes matched by a marker line (-1 if the line isn't one)
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            byte c = b[i];
+            if (markerPos >= 0) {
+                if (markerPos < caseMarker.length && c == caseMarker[markerPos]) {
+                    if (markerPos == 0) write(b, start, i, idle);
+                    markerPos++;
+                    start = i + 1;
+                    continue;
+                }
+                if (markerPos == caseMarker.length && c == '\r') {
+                    markerPos++;
+                    start = i + 1;
+                    continue;
+                }
+                if (markerPos >= caseMarker.length && c == '\n') {
+                    markers++;
+                    notifyAll();
+                    markerPos = 0;
+                    start = i + 1;
+                    continue;
+                }
+                //Not a marker, the bytes matched so far are output
+                write(caseMarker, 0, Math.min(markerPos, caseMarker.length), idle);
+                if (markerPos > caseMarker.length) write(new byte[] {'\r'}, 0, 1, idle);
+            }
+            markerPos = c == '\n' ? 0 : -1;
+        }
+        write(b, start, len, idle);
     }
 
-    private void write(String s) throws Exception {
-        if (sb.length() < maxLength) sb.append(s);
-        if (printMessages) {
-            System.out.print(s);
-            System.out.flush();
+    private void write(byte[] b, int from, int to, boolean idle) {
+        int len = to - from;
+        if (len <= 0) return;
+        // Output of a solution between cases is only shown
+        if (multiCase && markers % 2 == 0) {
+            if (printMessages) echo(b, from, len);
+            return;
         }
+        capture(b, from, len);
+        if (printMessages) echo(b, from, len);
         if (errorWriter != null) {
-            errorWriter.write(s);
-            errorWriter.flush();
+            try {
+                errorWriter.write(b, from, len);
+                long now = System.nanoTime();
+                if (idle && now - lastFlush >= flushInterval) {
+                    errorWriter.flush();
+                    lastFlush = now;
+                }
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    private void capture(byte[] b, int from, int len) {
+        int off = 0;
+        if (headLength < headSize) {
+            int n = Math.min(len, headSize - headLength);
+            if (headLength + n > head.length) {
+                byte[] h = new byte[Math.min(headSize, Math.max(head.length * 2, headLength + n))];
+                System.arraycopy(head, 0, h, 0, headLength);
+                head = h;
+            }
+            System.arraycopy(b, from, head, headLength, n);
+            headLength += n;
+            off = n;
+        }
+        total += len;
+        if (off == len) return;
+        if (tail == null) tail = new byte[tailSize];
+        // Only the last tailSize bytes can survive
+        if (len - off > tailSize) off = len - tailSize;
+        while (off < len) {
+            int n = Math.min(len - off, tailSize - tailPos);
+            System.arraycopy(b, from + off, tail, tailPos, n);
+            tailPos = (tailPos + n) % tailSize;
+            off += n;
         }
     }
 
-    public String getOutput() {
+    private void echo(byte[] b, int from, int len) {
+        long now = System.nanoTime();
+        echoBudget = Math.min(echoRate, echoBudget + (now - lastEcho) * 1e-9 * echoRate);
+        lastEcho = now;
+        // Once dropping, wait until half of the budget is back, to avoid flickering
+        if (echoDropped > 0 ? echoBudget < echoRate / 2 : echoBudget <= 0) {
+            echoDropped += len;
+            return;
+        }
+        // A chunk larger than the budget is still shown, and paid back later
+        echoBudget -= len;
+        flushEcho();
+        System.out.write(b, from, len);
+        System.out.flush();
+    }
+
+    private void flushEcho() {
+        if (echoDropped == 0) return;
+        System.out.println("[... " + echoDropped + " bytes of solution error output not shown ...]");
+        echoDropped = 0;
+    }
+
+    private void flushFile() {
+        try {
+            if (errorWriter != null) errorWriter.flush();
+        } catch (Exception e) {
+        }
+    }
+
+    private void resetCase() {
+        headLength = 0;
+        tail = null;
+        tailPos = 0;
+        total = 0;
+        echoBudget = echoRate;
+        lastEcho = System.nanoTime();
+        echoDropped = 0;
+    }
+
+    /**
+     * Captured output: the head, and if anything was dropped, a truncation marker and the tail.
+     */
+    public synchronized String getOutput() {
+        Charset cs = Charset.defaultCharset();
+        if (total <= headLength) return new String(head, 0, headLength, cs);
+        long kept = total - headLength;
+        StringBuilder sb = new StringBuilder(new String(head, 0, headLength, cs));
+        if (kept <= tailSize) {
+            sb.append(new String(tail, 0, (int) kept, cs));
+        } else {
+            sb.append("\n[... ").append(kept - tailSize).append(" bytes truncated ...]\n");
+            byte[] b = new byte[tailSize];
+            System.arraycopy(tail, tailPos, b, 0, tailSize - tailPos);
+            System.arraycopy(tail, 0, b, tailSize - tailPos, tailPos);
+            sb.append(new String(b, cs));
+        }
         return sb.toString();
     }
 
+    /**
+     * Start capturing a new test case of a solution that handles many cases (-multiCase).
+     */
+    public synchronized void startCase(OutputStream errorWriter) {
+        this.errorWriter = errorWriter;
+        resetCase();
+        // The markers of "@begin" and "@end" of this case are still to come
+        caseEndMarkers = markers + 2;
+    }
+
+    /**
+     * Wait until the marker of the end of the current case was read (everything the solution
+     * wrote for the case is captured). Returns false if it doesn't arrive in time.
+     */
+    public synchronized boolean awaitCaseEnd(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (markers < caseEndMarkers && !closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return false;
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return markers >= caseEndMarkers;
+    }
+
+    /**
+     * Return the output captured for the current case, and stop writing it to its error file.
+     */
+    public synchronized String endCase() {
+        flushEcho();
+        flushFile();
+        errorWriter = null;
+        return getOutput();
+    }
+
     public void close() {
         try {
             if (errorStream != null) errorStream.close();
         } catch (Exception e) {
         }
-        try {
-            if (errorWriter != null) errorWriter.close();
-        } catch (Exception e) {
+        synchronized (this) {
+            flushEcho();
+            // With many cases, the error file belongs to the tester of the case
+            if (multiCase) {
+                flushFile();
+                return;
+            }
+            try {
+                if (errorWriter != null) errorWriter.close();
+            } catch (Exception e) {
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+package com.topcoder.marathon;
+
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.swing.JComponent;
+import javax.swing.JSlider;
+
+/**
+ * Strip of small thumbnails of the recorded frames, evenly sampled over the whole history, shown
+ * above the slider. Thumbnails are rendered in the background (shared Threads executor, with at
+ * most half of the cores rendering at once), from the frames display lists, and cached as 16 bits
+ * per pixel images, keeping the maxThumbs most recently used. Optionally, numeric info values
+ * are drawn as sparklines below the thumbnails. Clicking the strip moves the slider.
+ */
+class Filmstrip extends JComponent {
+    private static final long serialVersionUID = 4511470853396329162L;
+    private static final int thumbHeight = 48, gap = 4, sparklineHeight = 28;
+    private static final int maxThumbs = 512;
+    private static final int maxRendering = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final Color[] sparklineColors = {new Color(40, 90, 200), new Color(200, 60, 40), new Color(30, 150, 60), new Color(150, 60, 170)};
+
+    private final List<Frame> frames;
+    private final Object lock;
+    private final JSlider slider;
+    private final String[] sparklineKeys;
+    private final Map<Integer, BufferedImage> thumbs = Collections.synchronizedMap(new LinkedHashMap<Integer, BufferedImage>(16, 0.75f, true) {
+        private static final long serialVersionUID = -2094871622145301731L;
+
+        protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+            return size() > maxThumbs;
+        }
+    });
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+    // Frames that failed to render, shown as empty thumbnails instead of being tried again
+    private final Set<Integer> failed = ConcurrentHashMap.newKeySet();
+    private volatile boolean disposed;
+    private volatile int thumbWidth;
+
+    public Filmstrip(List<Frame> frames, Object lock, JSlider slider, String[] sparklineKeys) {
+        this.frames = frames;
+        this.lock = lock;
+        this.slider = slider;
+        this.sparklineKeys = sparklineKeys;
+        setPreferredSize(new Dimension(100, thumbHeight + 2 * gap + (sparklineKeys.length > 0 ? sparklineHeight : 0)));
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                jumpTo(e.getX());
+            }
+        });
+        addMouseMotionListener(new MouseAdapter() {
+            public void mouseDragged(MouseEvent e) {
+                jumpTo(e.getX());
+            }
+        });
+    }
+
+    public void dispose() {
+        disposed = true;
+    }
+
+    private int frameCount() {
+        synchronized (lock) {
+            return frames.size();
+        }
+    }
+
+    private void jumpTo(int x) {
+        int n = frameCount();
+        if (n == 0 || getWidth() <= 1) return;
+        slider.setValue((int) Math.round(Math.max(0, Math.min(1, x / (getWidth() - 1.0))) * (n - 1)));
+    }
+
+    private int getThumbWidth() {
+        int w = (int) Math.round(thumbHeight * Frame.contentRect.getWidth() / Frame.contentRect.getHeight());
+        w = Math.max(thumbHeight / 2, Math.min(thumbHeight * 2, w));
+        if (w != thumbWidth) {
+            thumbWidth = w;
+            thumbs.clear();
+        }
+        return w;
+    }
+
+    private BufferedImage getThumb(int index, int w) {
+        BufferedImage img = thumbs.get(index);
+        if (img != null && img.getWidth() == w) return img;
+        // Thumbnails not requested now are requested again by the repaint after each one
+        if (disposed || failed.contains(index) || pending.size() >= maxRendering) return null;
+        if (pending.add(index)) {
+            Frame frame;
+            synchronized (lock) {
+                frame = frames.get(index);
+            }
+            Threads.execute(() -> {
+                try {
+                    if (disposed) return;
+                    BufferedImage thumb = new BufferedImage(w, thumbHeight, BufferedImage.TYPE_USHORT_565_RGB);
+                    Graphics2D g = thumb.createGraphics();
+                    frame.renderThumbnail(g, w, thumbHeight);
+                    g.dispose();
+                    thumbs.put(index, thumb);
+                } catch (Exception e) {
+                    if (failed.isEmpty()) {
+                        System.out.println("ERROR rendering the filmstrip thumbnail of frame " + index + " (other failures are not shown):");
+                        e.printStackTrace();
+                    }
+                    failed.add(index);
+                } finally {
+                    pending.remove(index);
+                }
+                repaint();
+            });
+        }
+        return null;
+    }
+
+    protected void paintComponent(Graphics g) {
+        int w = getWidth();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, w, getHeight());
+        int n = frameCount();
+        if (n == 0) return;
+        int tw = getThumbWidth();
+        int slots = Math.max(1, Math.min(n, (w + gap) / (tw + gap)));
+        int current = slider.getValue();
+        int currentSlot = n == 1 ? 0 : (int) Math.round(current * (slots - 1.0) / (n - 1));
+        double step = slots == 1 ? 0 : (w - tw) / (slots - 1.0);
+        for (int i = 0; i < slots; i++) {
+            int index = slots == 1 ? n - 1 : (int) Math.round(i * (n - 1.0) / (slots - 1));
+            int x = (int) Math.round(i * step);
+            BufferedImage img = getThumb(index, tw);
+            if (img != null) g.drawImage(img, x, gap, null);
+            else {
+                g.setColor(Color.lightGray);
+                g.fillRect(x, gap, tw, thumbHeight);
+            }
+            g.setColor(i == currentSlot ? Color.red : Color.gray);
+            g.drawRect(x, gap, tw - 1, thumbHeight - 1);
+        }
+        if (sparklineKeys.length > 0) paintSparklines((Graphics2D) g, n, thumbHeight + 2 * gap);
+    }
+
+    private void paintSparklines(Graphics2D g, int n, int y0) {
+        int w = getWidth();
+        int h = sparklineHeight - gap;
+        double[] values = new double[n];
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setFont(g.getFont().deriveFont(10f));
+        int labelX = 2;
+        for (int k = 0; k < sparklineKeys.length; k++) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            synchronized (lock) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = toDouble(frames.get(i).getInfo(sparklineKeys[k]));
+                    if (Double.isNaN(values[i])) continue;
+                    min = Math.min(min, values[i]);
+                    max = Math.max(max, values[i]);
+                }
+            }
+            if (min > max) continue;
+            Color color = sparklineColors[k % sparklineColors.length];
+            g.setColor(color);
+            Path2D.Double path = new Path2D.Double();
+            boolean started = false;
+            for (int i = 0; i < n; i++) {
+                if (Double.isNaN(values[i])) continue;
+                double x = n == 1 ? w / 2.0 : i * (w - 1.0) / (n - 1);
+                double y = y0 + h - (max == min ? h / 2.0 : (values[i] - min) * h / (max - min));
+                if (started) path.lineTo(x, y);
+                else path.moveTo(x, y);
+                started = true;
+            }
+            g.draw(path);
+            String label = sparklineKeys[k];
+            g.drawString(label, labelX, y0 + g.getFontMetrics().getAscent());
+            labelX += g.getFontMetrics().stringWidth(label) + 3 * gap;
+        }
+        g.setColor(Color.red);
+        int cx = n == 1 ? w / 2 : (int) Math.round(slider.getValue() * (w - 1.0) / (n - 1));
+        g.drawLine(cx, y0, cx, y0 + h);
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException e) {
+            }
+        }
+        return Double.NaN;
+    }
+}
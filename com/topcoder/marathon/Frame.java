@@ -19,7 +19,8 @@ public class Frame {
     public static Rectangle2D contentRect = new Rectangle2D.Double(0, 0, 100, 100);
     public Rectangle2D contentScreen = new Rectangle2D.Double();
     public static Font infoFontPlain, infoFontBold;
-    public static RenderingHints hints;
+    public static RenderingHints hints, previewHints;
+    public static boolean levelOfDetail = true;
     public static int border, infoFontWidth, infoFontHeight, infoColumns, infoLines;
     public static final double lineSpacing = 1.25;
 
@@ -32,15 +33,52 @@ public class Frame {
     }
 
     public void render(Graphics2D g, int w, int h) {
+        render(g, w, h, false);
+    }
+
+    public void render(Graphics2D g, int w, int h, boolean preview) {
         g.setColor(new Color(230, 230, 232));
         g.fillRect(0, 0, w, h);
-        g.setRenderingHints(hints);
+        g.setRenderingHints(preview ? previewHints : hints);
 
         if (infoColumns > 0 && infoFontWidth > 0) paintInfo(g, w);
-        paintCenter(g, infoFontWidth == 0 ? w : w - infoFontWidth * infoColumns - border, h);
+        paintCenter(g, infoFontWidth == 0 ? w : w - infoFontWidth * infoColumns - border, h, preview);
+    }
+
+    public Object getInfo(Object key) {
+        return infoMap.get(key);
+    }
+
+    /**
+     * Key of the check box containing the point (as drawn by the last render), or null.
+     */
+    public Object getCheckBox(Point point) {
+        synchronized (infoRects) {
+            for (Object key : infoRects.keySet()) {
+                Rectangle2D rc = infoRects.get(key);
+                if (rc != null && rc.contains(point)) return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Render only the content, scaled to fit (w, h), with preview hints. May be called from
+     * any thread, as it doesn't change the state of the frame.
+     */
+    public void renderThumbnail(Graphics2D g, int w, int h) {
+        g.setColor(new Color(230, 230, 232));
+        g.fillRect(0, 0, w, h);
+        g.setRenderingHints(previewHints);
+        double scale = Math.min(w / contentRect.getWidth(), h / contentRect.getHeight());
+        AffineTransform nt = new AffineTransform(g.getTransform());
+        nt.translate((w - contentRect.getWidth() * scale) / 2, (h - contentRect.getHeight() * scale) / 2);
+        nt.scale(scale, scale);
+        nt.translate(-contentRect.getX(), -contentRect.getY());
+        graphics.build(g, nt, true, levelOfDetail ? g.getTransform().createTransformedShape(new Rectangle(0, 0, w, h)).getBounds() : null);
     }
 
-    private void paintCenter(Graphics2D g, int w, int h) {
+    private void paintCenter(Graphics2D g, int w, int h, boolean preview) {
         int pw = w - 2 * border;
         int ph = h - 2 * border;
         if (pw <= 0 || ph <= 0) return;
@@ -53,13 +91,13 @@ public class Frame {
             px += (pw - nw) / 2;
             pw = nw;
         }
-        AffineTransform nt = new AffineTransform();
+        AffineTransform ct = g.getTransform();
+        AffineTransform nt = new AffineTransform(ct);
         nt.translate(px, py);
         nt.scale(pw / contentRect.getWidth(), ph / contentRect.getHeight());
         nt.translate(-contentRect.getX(), -contentRect.getY());
-        AffineTransform ct = g.getTransform();
         contentScreen.setRect(px, py, pw, ph);
-        graphics.build(g, nt);
+        graphics.build(g, nt, preview, levelOfDetail ? ct.createTransformedShape(contentScreen).getBounds() : null);
         g.setTransform(ct);
     }
 
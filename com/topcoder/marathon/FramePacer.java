@@ -0,0 +1,80 @@
+package com.topcoder.marathon;
+
+/**
+ * Keeps the visualizer animation at a steady frame rate. The time spent simulating and painting
+ * since the previous frame is discounted from the wait, and when a frame is already late the
+ * schedule restarts from the current time, so frames are dropped instead of falling behind.
+ */
+class FramePacer {
+    private static final double minFps = 0.5, maxFps = 500;
+    private volatile long periodNanos;
+    private long nextFrame;
+    private long lateFrames;
+
+    public FramePacer(long periodMillis) {
+        setPeriodMillis(periodMillis);
+    }
+
+    public long getPeriodMillis() {
+        return Math.max(1, periodNanos / 1_000_000);
+    }
+
+    public void setPeriodMillis(long periodMillis) {
+        periodNanos = Math.max(1, periodMillis) * 1_000_000;
+    }
+
+    public double getFps() {
+        return 1e9 / periodNanos;
+    }
+
+    public void setFps(double fps) {
+        fps = Math.max(minFps, Math.min(maxFps, fps));
+        periodNanos = (long) (1e9 / fps);
+    }
+
+    public void faster() {
+        setFps(getFps() * 1.25);
+    }
+
+    public void slower() {
+        setFps(getFps() / 1.25);
+    }
+
+    /**
+     * Forget the current schedule, e.g. after a pause, so the next frame is not considered late.
+     */
+    public synchronized void reset() {
+        nextFrame = 0;
+    }
+
+    /**
+     * Number of frames that were due, but skipped because the previous ones took too long.
+     */
+    public synchronized long getLateFrames() {
+        return lateFrames;
+    }
+
+    /**
+     * Number of whole frame periods elapsed since the given System.nanoTime() instant.
+     */
+    public long framesSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / periodNanos;
+    }
+
+    public void awaitNextFrame() throws InterruptedException {
+        long now = System.nanoTime();
+        long period = periodNanos;
+        long wait;
+        synchronized (this) {
+            if (nextFrame == 0) nextFrame = now;
+            nextFrame += period;
+            wait = nextFrame - now;
+            if (wait <= 0) {
+                lateFrames += 1 - wait / period;
+                nextFrame = now;
+                return;
+            }
+        }
+        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+    }
+}
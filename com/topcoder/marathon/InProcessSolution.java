@@ -0,0 +1,372 @@
+package com.topcoder.marathon;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Java solution running inside the tester JVM (-execClass jar:MainClass), exposed as a Process.
+ * Each instance loads the solution with its own class loader, and runs its main() in a new thread
+ * group. System.in/out/err are replaced (once) by streams that dispatch to the streams of the
+ * solution that owns the calling thread, or to the original streams for any other thread.
+ * Time is measured as the CPU time used by the solution threads, including the ones that already
+ * ended (the last CPU time seen of each thread is kept).
+ * 
+ * Note that a solution calling System.exit() ends the whole tester. A solution busy computing is
+ * stopped with ThreadGroup.stop(), which Java 20 and later no longer support, so on those the
+ * controller runs the solution as a separate JVM instead (see toCommand()).
+ */
+class InProcessSolution extends Process {
+    private static final int pipeSize = 1 << 16;
+    private static final InheritableThreadLocal<InProcessSolution> current = new InheritableThreadLocal<InProcessSolution>();
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static boolean streamsInstalled;
+
+    private final BytePipe stdin = new BytePipe(pipeSize);
+    private final BytePipe stdout = new BytePipe(pipeSize);
+    private final BytePipe stderr = new BytePipe(pipeSize);
+    private final PrintStream out = new PrintStream(new BufferedOutputStream(stdout.out, 8192), true);
+    private final PrintStream err = new PrintStream(new BufferedOutputStream(stderr.out, 8192), true);
+    private final ThreadGroup group;
+    private final Thread main;
+    private final URLClassLoader classLoader;
+    private final Map<Long, Long> threadCpuTimes = new HashMap<Long, Long>();
+    private long cpuTime;
+    private volatile int exitValue;
+
+    public static InProcessSolution start(String execClass) throws Exception {
+        int pos = separator(execClass);
+        installStreams();
+        URL url = new File(execClass.substring(0, pos)).toURI().toURL();
+        return new InProcessSolution(new URLClassLoader(new URL[] {url}, ClassLoader.getPlatformClassLoader()), execClass.substring(pos + 1));
+    }
+
+    private static int separator(String execClass) {
+        int pos = execClass.lastIndexOf(':');
+        if (pos <= 0 || pos == execClass.length() - 1) {
+            throw new IllegalArgumentException("Parameter -" + Parameters.execClass + " should be <jar or classes folder>:<MainClass>.");
+        }
+        return pos;
+    }
+
+    /**
+     * False if this JVM can't stop a solution thread (ThreadGroup.stop() is not supported 
+     * since Java 20), so a time limit can't be enforced.
+     */
+    public static boolean isSupported() {
+        return Runtime.version().feature() < 20;
+    }
+
+    /**
+     * Command that runs the same solution in its own JVM (using the java of the tester).
+     */
+    public static String toCommand(String execClass) {
+        int pos = separator(execClass);
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        return java + " -cp " + execClass.substring(0, pos) + " " + execClass.substring(pos + 1);
+    }
+
+    private InProcessSolution(URLClassLoader classLoader, String className) throws Exception {
+        this.classLoader = classLoader;
+        Method mainMethod = classLoader.loadClass(className).getMethod("main", String[].class);
+        group = new ThreadGroup("Solution " + className);
+        main = new Thread(group, () -> run(mainMethod), className + ".main");
+        main.setDaemon(true);
+        main.setContextClassLoader(classLoader);
+        main.start();
+    }
+
+    private void run(Method mainMethod) {
+        current.set(this);
+        try {
+            mainMethod.invoke(null, (Object) new String[0]);
+        } catch (Throwable e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            if (!(cause instanceof ThreadDeath)) {
+                cause.printStackTrace(err);
+                exitValue = 1;
+            }
+        } finally {
+            sampleCpuTime(Thread.currentThread().getId(), threadBean.getCurrentThreadCpuTime());
+            out.flush();
+            err.flush();
+            stdout.closeWrite();
+            stderr.closeWrite();
+        }
+    }
+
+    /**
+     * CPU time (in nanoseconds) used so far by the threads of this solution. It never goes
+     * back, even after threads end.
+     */
+    public synchronized long getCpuTime() {
+        Thread[] threads = new Thread[group.activeCount() + 8];
+        int n = group.enumerate(threads);
+        for (int i = 0; i < n; i++) {
+            long id = threads[i].getId();
+            sampleCpuTime(id, threadBean.getThreadCpuTime(id));
+        }
+        return cpuTime;
+    }
+
+    //Keep the highest CPU time seen of each thread (it is -1 once the thread ended)
+    private synchronized void sampleCpuTime(long id, long t) {
+        Long prev = threadCpuTimes.get(id);
+        if (t < 0 || (prev != null && t <= prev)) return;
+        cpuTime += t - (prev == null ? 0 : prev);
+        threadCpuTimes.put(id, t);
+    }
+
+    public OutputStream getOutputStream() {
+        return stdin.out;
+    }
+
+    public InputStream getInputStream() {
+        return stdout.in;
+    }
+
+    public InputStream getErrorStream() {
+        return stderr.in;
+    }
+
+    public int waitFor() throws InterruptedException {
+        main.join();
+        return exitValue;
+    }
+
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        if (nanos > 0) main.join(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        return !main.isAlive();
+    }
+
+    public boolean isAlive() {
+        return main.isAlive();
+    }
+
+    public int exitValue() {
+        if (main.isAlive()) throw new IllegalThreadStateException("Solution is still running");
+        return exitValue;
+    }
+
+    @SuppressWarnings({"deprecation", "removal"})
+    public void destroy() {
+        stdin.closeRead();
+        stdout.closeRead();
+        stderr.closeRead();
+        group.interrupt();
+        try {
+            main.join(100);
+            // A solution busy computing doesn't notice interrupts or closed streams
+            if (main.isAlive()) {
+                group.stop();
+                main.join(100);
+            }
+        } catch (Throwable e) {
+        }
+        if (main.isAlive()) {
+            System.out.println("ERROR: Solution thread " + main.getName() + " could not be stopped, and keeps running in the tester.");
+        }
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private static synchronized void installStreams() {
+        if (streamsInstalled) return;
+        streamsInstalled = true;
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setIn(new InputStream() {
+            private InputStream target() {
+                InProcessSolution s = current.get();
+                return s == null ? in : s.stdin.in;
+            }
+
+            public int read() throws IOException {
+                return target().read();
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                return target().read(b, off, len);
+            }
+
+            public int available() throws IOException {
+                return target().available();
+            }
+        });
+        System.setOut(new DispatchPrintStream(out, s -> s.out));
+        System.setErr(new DispatchPrintStream(err, s -> s.err));
+    }
+
+    private static class DispatchPrintStream extends PrintStream {
+        private final PrintStream original;
+        private final Function<InProcessSolution, PrintStream> solutionStream;
+
+        private DispatchPrintStream(PrintStream original, Function<InProcessSolution, PrintStream> solutionStream) {
+            super(original);
+            this.original = original;
+            this.solutionStream = solutionStream;
+        }
+
+        private PrintStream target() {
+            InProcessSolution s = current.get();
+            return s == null ? original : solutionStream.apply(s);
+        }
+
+        public void flush() {
+            target().flush();
+        }
+
+        public void close() {
+            target().close();
+        }
+
+        public boolean checkError() {
+            return target().checkError();
+        }
+
+        public void write(int b) {
+            target().write(b);
+        }
+
+        public void write(byte[] buf, int off, int len) {
+            target().write(buf, off, len);
+        }
+
+        public void write(byte[] buf) throws IOException {
+            target().write(buf);
+        }
+
+        public void writeBytes(byte[] buf) {
+            target().writeBytes(buf);
+        }
+
+        public void print(boolean b) {
+            target().print(b);
+        }
+
+        public void print(char c) {
+            target().print(c);
+        }
+
+        public void print(int i) {
+            target().print(i);
+        }
+
+        public void print(long l) {
+            target().print(l);
+        }
+
+        public void print(float f) {
+            target().print(f);
+        }
+
+        public void print(double d) {
+            target().print(d);
+        }
+
+        public void print(char[] s) {
+            target().print(s);
+        }
+
+        public void print(String s) {
+            target().print(s);
+        }
+
+        public void print(Object obj) {
+            target().print(obj);
+        }
+
+        public void println() {
+            target().println();
+        }
+
+        public void println(boolean x) {
+            target().println(x);
+        }
+
+        public void println(char x) {
+            target().println(x);
+        }
+
+        public void println(int x) {
+            target().println(x);
+        }
+
+        public void println(long x) {
+            target().println(x);
+        }
+
+        public void println(float x) {
+            target().println(x);
+        }
+
+        public void println(double x) {
+            target().println(x);
+        }
+
+        public void println(char[] x) {
+            target().println(x);
+        }
+
+        public void println(String x) {
+            target().println(x);
+        }
+
+        public void println(Object x) {
+            target().println(x);
+        }
+
+        public PrintStream printf(String format, Object... args) {
+            target().printf(format, args);
+            return this;
+        }
+
+        public PrintStream printf(Locale l, String format, Object... args) {
+            target().printf(l, format, args);
+            return this;
+        }
+
+        public PrintStream format(String format, Object... args) {
+            target().format(format, args);
+            return this;
+        }
+
+        public PrintStream format(Locale l, String format, Object... args) {
+            target().format(l, format, args);
+            return this;
+        }
+
+        public PrintStream append(CharSequence csq) {
+            target().append(csq);
+            return this;
+        }
+
+        public PrintStream append(CharSequence csq, int start, int end) {
+            target().append(csq, start, end);
+            return this;
+        }
+
+        public PrintStream append(char c) {
+            target().append(c);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.topcoder.marathon;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Level of detail raster, used when replaying a CachedGraphics2D. Filled ops smaller than a device
+ * pixel are not drawn individually: their colors are accumulated, weighted by the covered area,
+ * into the pixel that contains their center, and the resulting raster is drawn at once.
+ * Instances are reused per thread, as both the EDT and the filmstrip workers replay frames.
+ */
+class LodRaster {
+    private static final ThreadLocal<LodRaster> rasters = ThreadLocal.withInitial(LodRaster::new);
+    private static final Map<Image, Integer> averageColors = Collections.synchronizedMap(new WeakHashMap<Image, Integer>());
+
+    private int x0, y0, width, height;
+    private double sx, sy, tx, ty;
+    private float[] sumR = new float[0], sumG = new float[0], sumB = new float[0], weight = new float[0];
+    private int minX, minY, maxX, maxY;
+    private BufferedImage image;
+    private int[] pixels;
+
+    public static LodRaster get() {
+        return rasters.get();
+    }
+
+    /**
+     * Prepare the raster to cover the given device bounds, for ops drawn with the given
+     * (axis-aligned) device transform.
+     */
+    public void begin(Rectangle bounds, AffineTransform transform) {
+        x0 = bounds.x;
+        y0 = bounds.y;
+        width = bounds.width;
+        height = bounds.height;
+        sx = transform.getScaleX();
+        sy = transform.getScaleY();
+        tx = transform.getTranslateX();
+        ty = transform.getTranslateY();
+        int size = width * height;
+        if (weight.length < size) {
+            sumR = new float[size];
+            sumG = new float[size];
+            sumB = new float[size];
+            weight = new float[size];
+        }
+        if (image == null || image.getWidth() < width || image.getHeight() < height) {
+            image = new BufferedImage(Math.max(width, image == null ? 0 : image.getWidth()), Math.max(height, image == null ? 0 : image.getHeight()), BufferedImage.TYPE_INT_ARGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = -1;
+    }
+
+    public boolean isEmpty() {
+        return maxX < 0;
+    }
+
+    /**
+     * Accumulate a filled rectangle (in content coordinates), if it is smaller than a device pixel.
+     * Returns false if it must be drawn normally.
+     */
+    public boolean add(double x, double y, double w, double h, int argb) {
+        double dw = Math.abs(w * sx);
+        double dh = Math.abs(h * sy);
+        if (dw > 1 || dh > 1) return false;
+        int px = (int) Math.floor((x + w / 2) * sx + tx) - x0;
+        int py = (int) Math.floor((y + h / 2) * sy + ty) - y0;
+        if (px < 0 || py < 0 || px >= width || py >= height) return false;
+        float a = (float) (dw * dh * (argb >>> 24) / 255.0);
+        if (a <= 0) return true;
+        int i = py * width + px;
+        sumR[i] += a * ((argb >> 16) & 255);
+        sumG[i] += a * ((argb >> 8) & 255);
+        sumB[i] += a * (argb & 255);
+        weight[i] += a;
+        if (px < minX) minX = px;
+        if (px > maxX) maxX = px;
+        if (py < minY) minY = py;
+        if (py > maxY) maxY = py;
+        return true;
+    }
+
+    public boolean add(double x, double y, double w, double h, Color color) {
+        return add(x, y, w, h, color == null ? 0xff000000 : color.getRGB());
+    }
+
+    public boolean add(double x, double y, double w, double h, Image img) {
+        Integer argb = averageColor(img);
+        return argb != null && add(x, y, w, h, argb);
+    }
+
+    /**
+     * Draw the accumulated pixels (in device space) and clear them.
+     */
+    public void flush(Graphics2D g) {
+        if (isEmpty()) return;
+        int stride = image.getWidth();
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int i = y * width + x;
+                float a = weight[i];
+                int argb = 0;
+                if (a > 0) {
+                    int r = Math.round(sumR[i] / a);
+                    int gr = Math.round(sumG[i] / a);
+                    int b = Math.round(sumB[i] / a);
+                    int alpha = Math.round(Math.min(1f, a) * 255);
+                    argb = (alpha << 24) | (r << 16) | (gr << 8) | b;
+                    sumR[i] = sumG[i] = sumB[i] = weight[i] = 0;
+                }
+                pixels[y * stride + x] = argb;
+            }
+        }
+        AffineTransform saved = g.getTransform();
+        g.setTransform(new AffineTransform());
+        g.drawImage(image, x0 + minX, y0 + minY, x0 + maxX + 1, y0 + maxY + 1, minX, minY, maxX + 1, maxY + 1, null);
+        g.setTransform(saved);
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = -1;
+    }
+
+    private static Integer averageColor(Image img) {
+        if (img == null) return null;
+        Integer argb = averageColors.get(img);
+        if (argb != null) return argb;
+        int w = img.getWidth(null);
+        int h = img.getHeight(null);
+        if (w <= 0 || h <= 0) return null;
+        int size = 16;
+        BufferedImage small = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = small.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(img, 0, 0, size, size, null);
+        g.dispose();
+        double r = 0, gr = 0, b = 0, a = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int c = small.getRGB(x, y);
+                double ca = (c >>> 24) / 255.0;
+                r += ca * ((c >> 16) & 255);
+                gr += ca * ((c >> 8) & 255);
+                b += ca * (c & 255);
+                a += ca;
+            }
+        }
+        if (a == 0) argb = 0;
+        else argb = ((int) Math.round(a * 255 / (size * size)) << 24) | ((int) Math.round(r / a) << 16) | ((int) Math.round(gr / a) << 8) | (int) Math.round(b / a);
+        averageColors.put(img, argb);
+        return argb;
+    }
+}
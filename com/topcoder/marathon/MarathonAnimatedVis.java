@@ -1,8 +1,5 @@
 package com.topcoder.marathon;
 
-import java.awt.event.KeyAdapter;
-import java.awt.event.KeyEvent;
-
 /**
  * Base class for Topcoder Marathon testers with animation, i.e.
  * intermediate states are displayed in the visualizer.
@@ -10,17 +7,26 @@ import java.awt.event.KeyEvent;
  * Updates: 
  *      2021/02/03 - Keep the delay setting after end(), to allow pauses after the solution is over, 
  *                   in a manual mode or some kind of animation of the final state.
+ *      2026/10/18 - Pace frames with a FramePacer, which discounts simulation and painting time 
+ *                   from the delay and drops frames instead of falling behind. 
+ *                 - Add -fps parameter, as an alternative to -delay.
+ *                 - While paused, Right (at the last frame) or any non navigation key advances 
+ *                   a single step. After the solution is over, space plays the recorded history.
  */
 public abstract class MarathonAnimatedVis extends MarathonVis {
     private int delay = -1;
     private final Object pauseLock = new Object();
-    private boolean listenerInit;
     private boolean paused;
     private boolean keyPressed;
 
     public void setParameters(Parameters parameters) {
         super.setParameters(parameters);
-        if (parameters.isDefined(Parameters.delay)) delay = parameters.getIntValue(Parameters.delay);
+        if (parameters.isDefined(Parameters.delay)) {
+            delay = parameters.getIntValue(Parameters.delay);
+            if (delay > 0) framePacer.setPeriodMillis(delay);
+        } else if (parameters.isDefined(Parameters.fps)) {
+            delay = (int) Math.max(1, Math.round(1000 / framePacer.getFps()));
+        }
         if (parameters.isDefined(Parameters.startPaused)) paused = true;
     }
 
@@ -42,27 +48,40 @@ public abstract class MarathonAnimatedVis extends MarathonVis {
     }
 
     protected final void setDefaultDelay(int defaultDelay) {
-        if (delay == -1) delay = defaultDelay;
+        if (delay == -1) {
+            delay = defaultDelay;
+            if (delay > 0) framePacer.setPeriodMillis(delay);
+        }
+    }
+
+    void togglePause() {
+        if (ending || !hasDelay()) {
+            super.togglePause();
+            return;
+        }
+        synchronized (pauseLock) {
+            paused = !paused;
+            keyPressed = true;
+            pauseLock.notifyAll();
+        }
+    }
+
+    void stepForward() {
+        if (isLastFrameShown()) otherKeyPressed();
+        else super.stepForward();
+    }
+
+    void otherKeyPressed() {
+        synchronized (pauseLock) {
+            keyPressed = true;
+            pauseLock.notifyAll();
+        }
     }
 
     protected void updateDelay() {
         if (!hasVis()) return;
         update();
         if (!hasDelay()) return;
-        synchronized (updateLock) {
-            if (!listenerInit) {
-                listenerInit = true;
-                frame.addKeyListener(new KeyAdapter() {
-                    public void keyPressed(KeyEvent e) {
-                        synchronized (pauseLock) {
-                            if (e.getKeyChar() == ' ') paused = !paused;
-                            keyPressed = true;
-                            pauseLock.notifyAll();
-                        }
-                    }
-                });
-            }
-        }
         synchronized (pauseLock) {
             if (paused) {
                 keyPressed = false;
@@ -72,12 +91,13 @@ public abstract class MarathonAnimatedVis extends MarathonVis {
                     } catch (InterruptedException e) {
                     }
                 }
+                framePacer.reset();
             }
         }
         if (!paused) {
             try {
-                Thread.sleep(delay);
-            } catch (Exception e) {
+                framePacer.awaitNextFrame();
+            } catch (InterruptedException e) {
             }
         }
     }
@@ -1,18 +1,20 @@
 package com.topcoder.marathon;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.lang.reflect.Constructor;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.text.DecimalFormat;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Main entry point of the Marathon tester. It handles parameter and calls the solution.
@@ -21,13 +23,53 @@ import java.util.TreeMap;
  *      2020/12/28 - Handle a list of seeds, like -sd {1,9,72,909}.
  *      2021/02/04 - Allow easy repetition of a single seed, a range or a list,
  *                   using suffix "*N", like -sd 1*5 or -sd 1,50*5 or -sd {1,9,72,99}*5.
+ *      2026/10/18 - Add -processPool K, to keep K solution processes started ahead of time.
+ *                 - Add -execClass jar:MainClass, to run a Java solution inside the tester JVM.
+ *                 - Add -multiCase, to keep one solution process per worker thread, handling 
+ *                   many test cases (see SolutionServer for the protocol).
+ *                 - Test workers run on the shared executor (Threads), using virtual threads 
+ *                   when available.
+ *                 - Add -rescore folder, to score all saved outputs of a folder in parallel.
+ *                 - Without visualization, test cases are generated ahead of the workers,
+ *                   on the spare cores.
+ *                 - Add -runtimes file, to run the longest seeds first, using their run time 
+ *                   history (see RunTimeHistory). The summary shows the makespan and idle 
+ *                   core time.
+ *                 - Bests are loaded once per batch, with improvements appended to a journal
+ *                   that can be shared by several controllers (see BestsStore).
+ *                 - Scores (-saveScores) are written as each test case finishes, with run 
+ *                   time and status. Add -resume and -rerunFailed to continue a batch.
+ *                 - Seeds are computed as the workers claim them (SeedSource), instead of being
+ *                   stored in a list, so ranges are not limited in length. Add -seedOrder 
+ *                   shuffle[:key] or stride:K.
+ *                 - Add -pinCores [K], to run the solutions of each worker slot on K cores of
+ *                   their own (Linux, with taskset), with the tester on the remaining ones. 
+ *                   The summary shows the run time variation of each slot.
+ *                 - Add -threads auto, to adapt the number of active threads to the measured 
+ *                   run time inflation (see ConcurrencyGovernor and -maxRunTimeError).
+ *                 - Add -retryTimeouts [K], to run timed out seeds again at the end of the 
+ *                   batch, using K threads (default is half of them).
  */
 public class MarathonController {
     private final Object statsLock = new Object();
-    private long maxRunTime, avgRunTime;
-    private int numFails, numCases, numImproved, numTied, numNew;
+    private long maxRunTime, avgRunTime, busyTime;
+    private long[] slotCases;
+    private double[] slotSum, slotSumSq;
+    private int numFails, numCases, numImproved, numTied, numNew, numRetried, numTimeouts;
     private double prevTotScore, currTotScore;
     private static final double eps = 1e-9;
+    private static final MarathonTester endOfTests = new MarathonTester() {
+        protected void generate() {
+        }
+
+        protected boolean isMaximize() {
+            return false;
+        }
+
+        protected double run() {
+            return 0;
+        }
+    };
 
     private Parameters parseArgs(String[] args) {
         Parameters parameters = new Parameters();
@@ -54,57 +96,100 @@ public class MarathonController {
         return parameters;
     }
 
-    private synchronized Double checkBest(File bestsFile, boolean isMaximize, double errorScore, long seed, double score) {
-        if (bestsFile == null) return null;
-        Double best = null;
-        try {
-            Map<Long, Double> bests = new TreeMap<Long, Double>();
-            if (bestsFile.exists()) {
-                BufferedReader in = new BufferedReader(new FileReader(bestsFile));
-                String line = null;
-                while ((line = in.readLine()) != null) {
-                    String[] s = line.split("=");
-                    bests.put(Long.parseLong(s[0]), Double.parseDouble(s[1]));
-                }
-                in.close();
-            }
-            best = bests.get(seed);
-            if (score != errorScore) {
-                if (best == null || (isMaximize && score > best) || (!isMaximize && score < best)) {
-                    bests.put(seed, score);
-                    File tmpFile = new File(bestsFile.getPath() + ".tmp");
-                    BufferedWriter out = new BufferedWriter(new FileWriter(tmpFile));
-                    StringBuilder sb = new StringBuilder();
-                    for (long a : bests.keySet()) {
-                        sb.delete(0, sb.length());
-                        sb.append(a).append('=').append(bests.get(a));
-                        out.write(sb.toString());
-                        out.newLine();
+    private MarathonTester newTester(Constructor<?> constructor, Parameters parameters, long seed, long timeLimit) throws Exception {
+        MarathonTester tester = (MarathonTester) constructor.newInstance();
+        tester.setParameters(parameters);
+        tester.setSeed(seed);
+        if (timeLimit != 0) tester.setTimeLimit(timeLimit);
+        return tester;
+    }
+
+    //Create and prepare (generate) testers, handing them to the workers through a bounded queue, 
+    //followed by one endOfTests for each worker (testers already prepared are taken from estimated)
+    private void startGenerators(BlockingQueue<MarathonTester> prepared, SeedSource seeds, Map<Long, MarathonTester> estimated, Constructor<?> constructor, Parameters parameters, long timeLimit, int numWorkers) {
+        int numGenerators = Math.max(1, Runtime.getRuntime().availableProcessors() - numWorkers);
+        AtomicInteger running = new AtomicInteger(numGenerators);
+        for (int i = 0; i < numGenerators; i++) {
+            Thread generator = new Thread("Generator") {
+                public void run() {
+                    try {
+                        while (true) {
+                            long index = seeds.claim();
+                            if (index < 0) break;
+                            long seed = seeds.get(index);
+                            MarathonTester tester = estimated.remove(seed);
+                            if (tester == null) {
+                                try {
+                                    tester = newTester(constructor, parameters, seed, timeLimit);
+                                } catch (Exception e) {
+                                    System.out.println("ERROR calling tester " + constructor.getDeclaringClass().getName());
+                                    e.printStackTrace();
+                                    System.exit(-1);
+                                }
+                            }
+                            tester.prepare();
+                            prepared.put(tester);
+                        }
+                    } catch (InterruptedException e) {
+                    } catch (Throwable e) {
+                        System.out.println("ERROR generating test cases: " + e);
+                        e.printStackTrace();
+                    } finally {
+                        //The last generator to finish (or fail) ends the batch, so workers don't wait forever
+                        if (running.decrementAndGet() == 0) {
+                            try {
+                                for (int j = 0; j < numWorkers; j++) {
+                                    prepared.put(endOfTests);
+                                }
+                            } catch (InterruptedException e) {
+                            }
+                        }
                     }
-                    out.close();
-                    Files.move(tmpFile.toPath(), bestsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
                 }
+            };
+            generator.setDaemon(true);
+            generator.start();
+        }
+    }
+
+    //Relative cost of the seeds without run time history, as estimated by the tester after 
+    //generating them (stops at the first unknown estimate). The prepared testers are kept in 
+    //estimated, so their cases are not generated again
+    private Map<Long, Double> estimateRunTimes(RunTimeHistory history, List<Long> seeds, Map<Long, MarathonTester> estimated, Constructor<?> constructor, Parameters parameters, long timeLimit) {
+        Map<Long, Double> estimates = new TreeMap<Long, Double>();
+        for (long seed : seeds) {
+            if (history.contains(seed) || estimates.containsKey(seed)) continue;
+            try {
+                MarathonTester tester = newTester(constructor, parameters, seed, timeLimit);
+                tester.prepare();
+                double cost = tester.estimateRunTime();
+                estimated.put(seed, tester);
+                if (cost < 0) break;
+                estimates.put(seed, cost);
+            } catch (Exception e) {
+                break;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return best;
+        return estimates;
     }
 
-    private void saveScores(File scoresFile, Map<Long, Double> currentScores) {
-        try {
-            BufferedWriter out = new BufferedWriter(new FileWriter(scoresFile));
-            StringBuilder sb = new StringBuilder();
-            for (long a : currentScores.keySet()) {
-                sb.delete(0, sb.length());
-                sb.append(a).append('=').append(currentScores.get(a));
-                out.write(sb.toString());
-                out.newLine();
-            }
-            out.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+    //Seeds of the saved outputs (seed.out, seed.out.gz or seed.out.z) of a folder
+    private List<Long> findSavedSeeds(File folder) {
+        TreeSet<Long> found = new TreeSet<Long>();
+        String[] names = folder.list();
+        if (names != null) {
+            for (String name : names) {
+                int p = name.indexOf(".out");
+                if (p <= 0) continue;
+                String suffix = name.substring(p);
+                if (!suffix.equals(".out") && !suffix.equals(".out.gz") && !suffix.equals(".out.z")) continue;
+                try {
+                    found.add(Long.parseLong(name.substring(0, p)));
+                } catch (NumberFormatException e) {
+                }
+            }
         }
+        return new ArrayList<Long>(found);
     }
 
     //Called by server tester using a direct call
@@ -152,22 +237,69 @@ public class MarathonController {
         //Parse command line parameters
         Parameters parameters = parseArgs(args);
 
-        //Seeds queue
-        LinkedList<Long> seeds = new LinkedList<Long>();
+        //Re-score all saved outputs of a folder, using all cores and no visualization
+        List<Long> savedSeeds = null;
+        if (parameters.isDefined(Parameters.rescore)) {
+            if (parameters.isDefined(Parameters.loadSolOutput)) {
+                System.out.println("ERROR: Parameters " + Parameters.rescore + " and " + Parameters.loadSolOutput + " can't be used together.");
+                return;
+            }
+            String s = parameters.getStringNull(Parameters.rescore);
+            File folder = new File(s == null ? "." : s);
+            if (!folder.isDirectory()) {
+                System.out.println("ERROR can't find folder " + folder);
+                return;
+            }
+            parameters.remove(Parameters.rescore);
+            parameters.put(Parameters.loadSolOutput, folder.getPath());
+            parameters.put(Parameters.noVis, null);
+            parameters.put(Parameters.noOutput, null);
+            if (!parameters.isDefined(Parameters.threads)) parameters.put(Parameters.threads, String.valueOf(Runtime.getRuntime().availableProcessors()));
+            if (!parameters.isDefined(Parameters.seed)) {
+                savedSeeds = findSavedSeeds(folder);
+                if (savedSeeds.isEmpty()) {
+                    System.out.println("ERROR no saved outputs found in folder " + folder);
+                    return;
+                }
+            }
+        }
+
+        //Results of a previous batch, to continue it (-resume) or run its failed seeds again (-rerunFailed)
+        boolean resume = parameters.isDefined(Parameters.resume);
+        boolean rerunFailed = parameters.isDefined(Parameters.rerunFailed);
+        ScoresFile scoresFile = null;
+        if (parameters.isDefined(Parameters.saveScores)) {
+            scoresFile = new ScoresFile(new File(parameters.getString(Parameters.saveScores)));
+            if (resume || rerunFailed) {
+                try {
+                    scoresFile.read();
+                } catch (Exception e) {
+                    System.out.println("ERROR reading scores file " + parameters.getString(Parameters.saveScores));
+                    e.printStackTrace();
+                    return;
+                }
+            }
+        } else if (resume || rerunFailed) {
+            System.out.println("ERROR: Parameter " + (resume ? Parameters.resume : Parameters.rerunFailed) + " requires " + Parameters.saveScores + ".");
+            return;
+        }
+
+        //Seeds to be tested, computed as they are claimed by the workers (see SeedSource)
+        SeedSource seeds = null;
 
         //Get seeds range (default is seed=1)
         String seedsProcessed = "";
         if (parameters.isDefined(Parameters.seed)) {
+            seeds = parameters.getSeedSource(Parameters.seed);
             if (parameters.isList(Parameters.seed)) {
-                List<Long> l = parameters.getLongList(Parameters.seed);
-                seeds.addAll(l);
+                long size = seeds.size();
                 StringBuilder sb = new StringBuilder();
                 sb.append("{");
-                for (int i = 0; i < l.size(); i++) {
+                for (long i = 0; i < size; i++) {
                     if (i > 0) sb.append(",");
-                    sb.append(l.get(i));
-                    if (i == 10 && l.size() > 15) {
-                        i = l.size() - 2;
+                    sb.append(seeds.get(i));
+                    if (i == 10 && size > 15) {
+                        i = size - 2;
                         sb.append(",...");
                     }
                 }
@@ -175,22 +307,46 @@ public class MarathonController {
                 seedsProcessed = sb.toString();
             } else {
                 long[] seedRange = parameters.getLongRange(Parameters.seed);
-                long startSeed = seedRange[0];
-                long endSeed = Math.min(seedRange[1], Parameters.maxListLen + startSeed);
-                seedsProcessed = startSeed + " to " + endSeed;
-                for (long seed = startSeed; seed <= endSeed; seed++) {
-                    seeds.add(seed);
-                }
+                seedsProcessed = seedRange[0] + " to " + seedRange[1];
             }
             parameters.remove(Parameters.seed);
+        } else if (savedSeeds != null) {
+            seeds = SeedSource.of(savedSeeds);
+            seedsProcessed = savedSeeds.size() + " saved outputs";
+        } else if (rerunFailed) {
+            seeds = SeedSource.of(scoresFile.getFailedSeeds());
+            seedsProcessed = seeds.size() + " failed seeds";
         } else {
-            seeds.add(1L);
+            seeds = SeedSource.range(1, 1);
             seedsProcessed = "1";
         }
 
+        //Order of the seeds: shuffle[:key] or stride:K (default is the given order)
+        if (parameters.isDefined(Parameters.seedOrder)) {
+            String[] order = parameters.getString(Parameters.seedOrder).split(":");
+            try {
+                if (order[0].equals("shuffle")) seeds = seeds.shuffle(order.length > 1 ? Long.parseLong(order[1]) : 1);
+                else if (order[0].equals("stride") && order.length > 1) seeds = seeds.stride(Long.parseLong(order[1]));
+                else throw new IllegalArgumentException();
+            } catch (Exception e) {
+                System.out.println("ERROR: Invalid " + Parameters.seedOrder + " value (it should be shuffle, shuffle:key or stride:K).");
+                return;
+            }
+        }
+
         //Multiple seeds?
         boolean multipleSeeds = seeds.size() > 1;
 
+        //Keep only seeds without a result (-resume) and seeds that failed (-rerunFailed)
+        if (resume || rerunFailed) {
+            ScoresFile previous = scoresFile;
+            seeds = seeds.filter(seed -> (resume && !previous.isDone(seed)) || (rerunFailed && previous.isFailed(seed)));
+            if (seeds.count(1) == 0) {
+                System.out.println("No seeds left to run, all of them have results in " + parameters.getString(Parameters.saveScores));
+                return;
+            }
+        }
+
         //Check and expand saveAll parameter
         if (parameters.isDefined(Parameters.saveAll)) {
             if (parameters.isDefined(Parameters.saveSolInput)) {
@@ -212,12 +368,36 @@ public class MarathonController {
             parameters.put(Parameters.saveSolError, folder);
         }
 
+        //Check invalid combinations with execClass parameter
+        if (parameters.isDefined(Parameters.execClass) && parameters.isDefined(Parameters.exec)) {
+            System.out.println("ERROR: Parameters " + Parameters.execClass + " and " + Parameters.exec + " can't be used together.");
+            return;
+        }
+
+        //Solutions running in the tester JVM can't be stopped on Java 20+, run them as a process
+        if (parameters.isDefined(Parameters.execClass) && !InProcessSolution.isSupported()) {
+            String cmd = null;
+            try {
+                cmd = InProcessSolution.toCommand(parameters.getString(Parameters.execClass));
+            } catch (IllegalArgumentException e) {
+                System.out.println("ERROR: " + e.getMessage());
+                return;
+            }
+            System.out.println("WARNING: Parameter " + Parameters.execClass + " requires Java 19 or older, running the solution as: " + cmd);
+            parameters.remove(Parameters.execClass);
+            parameters.put(Parameters.exec, cmd);
+        }
+
         //Check invalid combinations with loadSolOutput parameter
         if (parameters.isDefined(Parameters.loadSolOutput)) {
             if (parameters.isDefined(Parameters.exec)) {
                 System.out.println("ERROR: Parameters " + Parameters.loadSolOutput + " and " + Parameters.exec + " can't be used together.");
                 return;
             }
+            if (parameters.isDefined(Parameters.execClass)) {
+                System.out.println("ERROR: Parameters " + Parameters.loadSolOutput + " and " + Parameters.execClass + " can't be used together.");
+                return;
+            }
             if (parameters.isDefined(Parameters.saveSolOutput)) {
                 System.out.println("ERROR: Parameters " + Parameters.loadSolOutput + " and " + Parameters.saveSolOutput + " can't be used together.");
                 return;
@@ -228,33 +408,89 @@ public class MarathonController {
             }
         }
 
-        //Number of threads for simultaneous test execution (default is a single thread) 
+        //Number of threads for simultaneous test execution (default is a single thread), 
+        //"auto" adapts the number of active threads (see ConcurrencyGovernor)
         int numThreads = 1;
+        boolean autoThreads = false;
         if (parameters.isDefined(Parameters.threads)) {
-            numThreads = parameters.getIntValue(Parameters.threads);
+            autoThreads = "auto".equalsIgnoreCase(parameters.getString(Parameters.threads));
+            if (autoThreads && !parameters.isDefined(Parameters.exec) && !parameters.isDefined(Parameters.execClass)) {
+                System.out.println("ERROR: Parameter " + Parameters.threads + " auto requires " + Parameters.exec + " or " + Parameters.execClass + ".");
+                return;
+            }
+            numThreads = autoThreads ? Runtime.getRuntime().availableProcessors() : parameters.getIntValue(Parameters.threads);
             numThreads = Math.max(numThreads, 1);
             numThreads = Math.min(numThreads, Runtime.getRuntime().availableProcessors());
-            int numSeeds = seeds.size();
-            if (numSeeds < numThreads) numThreads = numSeeds;
+            long numSeeds = seeds.count(numThreads);
+            if (numSeeds < numThreads) numThreads = (int) numSeeds;
             parameters.remove(Parameters.threads);
         }
 
+        //Check if a solution process should handle many test cases (default is one process per test case)
+        boolean multiCase = parameters.isDefined(Parameters.multiCase);
+        if (multiCase && !parameters.isDefined(Parameters.exec) && !parameters.isDefined(Parameters.execClass)) {
+            System.out.println("ERROR: Parameter " + Parameters.multiCase + " requires " + Parameters.exec + " or " + Parameters.execClass + ".");
+            return;
+        }
+
+        //Give each worker slot its own cores (Linux only), keeping the tester on the others (default is no affinity)
+        List<String> cs = null;
+        if (parameters.isDefined(Parameters.pinCores)) {
+            if (!parameters.isDefined(Parameters.exec)) {
+                System.out.println("ERROR: Parameter " + Parameters.pinCores + " requires " + Parameters.exec + ".");
+                return;
+            }
+            if (parameters.isDefined(Parameters.processPool)) {
+                System.out.println("ERROR: Parameters " + Parameters.pinCores + " and " + Parameters.processPool + " can't be used together.");
+                return;
+            }
+            int coresPerSlot = parameters.getStringNull(Parameters.pinCores) == null ? 1 : Math.max(1, parameters.getIntValue(Parameters.pinCores));
+            List<Integer> cpus = CpuAffinity.getAllowedCpus();
+            if (cpus == null) {
+                System.out.println("ERROR: Parameter " + Parameters.pinCores + " requires Linux and taskset.");
+                return;
+            }
+            if (numThreads * coresPerSlot > cpus.size()) {
+                System.out.println("ERROR: " + numThreads + " threads with " + coresPerSlot + " cores each need " + numThreads * coresPerSlot + " cores, only " + cpus.size() + " available.");
+                return;
+            }
+            cs = CpuAffinity.assignSlots(cpus, numThreads, coresPerSlot);
+            List<Integer> testerCpus = cpus.subList(0, cpus.size() - numThreads * coresPerSlot);
+            if (testerCpus.isEmpty()) System.out.println("WARNING: No cores left for the tester, it will share the cores of the solutions.");
+            else if (!CpuAffinity.pinThisProcess(CpuAffinity.toList(testerCpus))) System.out.println("WARNING: Failed to set the cores of the tester.");
+        }
+        List<String> cpuSets = cs;
+
+        //Start solution processes ahead of time, if a pool size is defined (default is no pool)
+        if (parameters.isDefined(Parameters.processPool)) {
+            if (!parameters.isDefined(Parameters.exec)) {
+                System.out.println("ERROR: Parameter " + Parameters.processPool + " requires " + Parameters.exec + ".");
+                return;
+            }
+            int poolSize = Math.max(1, parameters.getIntValue(Parameters.processPool));
+            ProcessPool.start(parameters.getString(Parameters.exec), poolSize, seeds.count(poolSize));
+        }
+
         //Check if controlling bests is defined (default is turned off)
-        File bf = null;
+        File bestsFile = null;
         if (parameters.isDefined(Parameters.controlBests)) {
-            bf = new File(parameters.getString(Parameters.controlBests));
-            if (bf.getParentFile() != null && !bf.getParentFile().exists()) {
-                bf.getParentFile().mkdirs();
+            bestsFile = new File(parameters.getString(Parameters.controlBests));
+            if (bestsFile.getParentFile() != null && !bestsFile.getParentFile().exists()) {
+                bestsFile.getParentFile().mkdirs();
             }
         }
-        File bestsFile = bf;
 
-        //Save current scores to a file if enabled
-        Map<Long, Double> currentScores = new TreeMap<Long, Double>();
-        File scoresFile = null;
-        if (parameters.isDefined(Parameters.saveScores)) {
-            scoresFile = new File(parameters.getString(Parameters.saveScores));
+        //Save scores to a file, as each test case finishes, if enabled
+        if (scoresFile != null) {
+            try {
+                scoresFile.open(resume || rerunFailed);
+            } catch (Exception e) {
+                System.out.println("ERROR writing scores file " + parameters.getString(Parameters.saveScores));
+                e.printStackTrace();
+                return;
+            }
         }
+        ScoresFile results = scoresFile;
 
         //Instantiate the concrete class (actual MarathonTester) 
         Class<?> c = null;
@@ -277,6 +513,19 @@ public class MarathonController {
         double errorScore = es;
         boolean isMaximize = im;
 
+        //Load bests once, improvements are journaled (see BestsStore)
+        BestsStore bs = null;
+        if (bestsFile != null) {
+            try {
+                bs = new BestsStore(bestsFile, isMaximize, errorScore);
+            } catch (Exception e) {
+                System.out.println("ERROR reading bests file " + bestsFile);
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+        BestsStore bests = bs;
+
         //Check if showing runtime is enabled  (default is turned off)
         boolean printRuntime = parameters.isDefined(Parameters.printRuntime);
 
@@ -285,31 +534,151 @@ public class MarathonController {
         if (parameters.isDefined(Parameters.timeLimit)) tl = parameters.getLongValue(Parameters.timeLimit);
         long timeLimit = tl;
 
+        //Run the longest seeds first, if a run time history is defined (default is the given order)
+        RunTimeHistory history = null;
+        Map<Long, MarathonTester> estimated = new ConcurrentHashMap<Long, MarathonTester>();
+        if (parameters.isDefined(Parameters.runTimes)) {
+            history = new RunTimeHistory(new File(parameters.getString(Parameters.runTimes)));
+            if (numThreads > 1) {
+                Map<Long, Double> estimates = new TreeMap<Long, Double>();
+                //Sorting needs the seeds as a list
+                List<Long> l = seeds.toList();
+                if (parameters.isDefined(Parameters.noVis)) estimates = estimateRunTimes(history, l, estimated, constructor, parameters, timeLimit);
+                history.sort(l, estimates);
+                seeds = SeedSource.of(l);
+            }
+        }
+        RunTimeHistory runTimeHistory = history;
+        SeedSource testSeeds = seeds;
+
+        //Generate test cases ahead of the workers, on the spare cores (only without visualization, 
+        //as generate() may interact with it)
+        BlockingQueue<MarathonTester> prepared = null;
+        if (parameters.isDefined(Parameters.noVis) && seeds.count(numThreads + 1) > numThreads) {
+            prepared = new ArrayBlockingQueue<MarathonTester>(numThreads);
+            startGenerators(prepared, testSeeds, estimated, constructor, parameters, timeLimit, numThreads);
+        }
+        BlockingQueue<MarathonTester> preparedTesters = prepared;
+
+        //Adapt the number of active threads, measuring run times with a probe seed that is run 
+        //without visualization or saving anything 
+        ConcurrencyGovernor gv = null;
+        Parameters pp = null;
+        if (autoThreads && numThreads > 1) {
+            double maxError = parameters.isDefined(Parameters.maxRunTimeError) ? parameters.getDoubleValue(Parameters.maxRunTimeError) : 5;
+            gv = new ConcurrencyGovernor(numThreads, maxError / 100, seeds.first());
+            pp = parameters.copy();
+            pp.remove(Parameters.saveSolInput);
+            pp.remove(Parameters.saveSolOutput);
+            pp.remove(Parameters.saveSolError);
+            pp.remove(Parameters.saveVis);
+            pp.remove(Parameters.transcript);
+            pp.put(Parameters.noOutput, null);
+            pp.put(Parameters.noVis, null);
+        }
+        ConcurrencyGovernor governor = gv;
+        Parameters probeParameters = pp;
+
+        //Run timed out seeds again at the end, with fewer threads (default is no retry)
+        Queue<Long> rs = null;
+        int rt = 0;
+        if (parameters.isDefined(Parameters.retryTimeouts)) {
+            rs = new ConcurrentLinkedQueue<Long>();
+            rt = parameters.getStringNull(Parameters.retryTimeouts) == null ? Math.max(1, numThreads / 2) : Math.max(1, Math.min(numThreads, parameters.getIntValue(Parameters.retryTimeouts)));
+        }
+        Queue<Long> retrySeeds = rs;
+        int retryThreads = rt;
+        CountDownLatch mainDone = new CountDownLatch(numThreads);
+
         //Run tests
-        Thread[] threads = new Thread[numThreads];
-        for (int i = 0; i < numThreads; i++) {
-            (threads[i] = new Thread() {
-                public void run() {
-                    StringBuilder sb = new StringBuilder();
+        slotCases = new long[numThreads];
+        slotSum = new double[numThreads];
+        slotSumSq = new double[numThreads];
+        AtomicInteger nextSlot = new AtomicInteger();
+        long batchStart = System.nanoTime();
+        Threads.runAll(numThreads, new Runnable() {
+            public void run() {
+                int slot = nextSlot.getAndIncrement();
+                StringBuilder sb = new StringBuilder();
+                SolutionServer server = multiCase ? new SolutionServer() : null;
+                boolean retrying = false;
+                try {
                     while (true) {
+                        if (governor != null && !retrying) {
+                            try {
+                                if (governor.acquire()) {
+                                    governor.probeDone(runProbe(governor.getProbeSeed(), server, slot));
+                                    continue;
+                                }
+                            } catch (InterruptedException e) {
+                                break;
+                            }
+                        }
                         long seed = 0;
-                        synchronized (seeds) {
-                            if (seeds.isEmpty()) break;
-                            seed = seeds.removeFirst();
+                        MarathonTester tester = null;
+                        if (retrying) {
+                            Long r = retrySeeds.poll();
+                            if (r == null) break;
+                            seed = r;
+                        } else if (preparedTesters != null) {
+                            try {
+                                tester = preparedTesters.take();
+                            } catch (InterruptedException e) {
+                                tester = endOfTests;
+                            }
+                            if (tester == endOfTests) {
+                                if (governor != null) governor.cancel();
+                                if (retrySeeds == null || slot >= retryThreads) break;
+                                retrying = true;
+                                if (!awaitMainDone()) break;
+                                continue;
+                            }
+                            seed = tester.seed;
+                        } else {
+                            long index = testSeeds.claim();
+                            if (index < 0) {
+                                if (governor != null) governor.cancel();
+                                if (retrySeeds == null || slot >= retryThreads) break;
+                                retrying = true;
+                                if (!awaitMainDone()) break;
+                                continue;
+                            }
+                            seed = testSeeds.get(index);
                         }
                         try {
-                            MarathonTester tester = (MarathonTester) constructor.newInstance();
-                            tester.setParameters(parameters);
-                            tester.setSeed(seed);
-                            if (timeLimit != 0) tester.setTimeLimit(timeLimit);
+                            if (tester == null) tester = estimated.remove(seed);
+                            if (tester == null) tester = newTester(constructor, parameters, seed, timeLimit);
+                            tester.setSolutionServer(server);
+                            if (cpuSets != null) tester.setCpuSet(cpuSets.get(slot));
 
+                            long caseStart = System.nanoTime();
                             double score = tester.runTest();
                             long runTime = tester.getRunTime();
+                            long caseTime = (System.nanoTime() - caseStart) / 1_000_000;
+
+                            //First timeout of a seed, keep the attempt and run it again at the end
+                            if (retrySeeds != null && !retrying && tester.isTimeout()) {
+                                retrySeeds.add(seed);
+                                sb.delete(0, sb.length());
+                                if (multipleSeeds) sb.append("Seed = ").append(seed).append(", ");
+                                sb.append("Score = ").append(score).append(", Timeout (will be retried)");
+                                System.out.println(sb.toString());
+                                System.out.flush();
+                                synchronized (statsLock) {
+                                    numRetried++;
+                                    busyTime += caseTime;
+                                    if (results != null) results.add(seed, score, runTime, ScoresFile.statusTimeout, tester.getErrorScore(), 1);
+                                }
+                                if (governor != null) governor.caseDone();
+                                continue;
+                            }
+                            if (runTimeHistory != null) runTimeHistory.record(seed, caseTime, tester.estimateRunTime());
 
                             sb.delete(0, sb.length());
                             if (multipleSeeds) sb.append("Seed = ").append(seed).append(", ");
                             sb.append("Score = ").append(score);
-                            Double best = checkBest(bestsFile, isMaximize, errorScore, seed, score);
+                            if (retrying) sb.append(", Retry");
+                            Double best = bests == null ? null : bests.check(seed, score);
                             if (best != null) sb.append(", PreviousBest = ").append(best);
                             if (printRuntime) sb.append(", RunTime = ").append(runTime).append(" ms");
                             System.out.println(sb.toString());
@@ -318,10 +687,18 @@ public class MarathonController {
                             synchronized (statsLock) {
                                 numCases++;
                                 if (score == tester.getErrorScore()) numFails++;
+                                if (retrying && tester.isTimeout()) numTimeouts++;
                                 avgRunTime += runTime;
+                                busyTime += caseTime;
+                                slotCases[slot]++;
+                                slotSum[slot] += runTime;
+                                slotSumSq[slot] += (double) runTime * runTime;
                                 maxRunTime = Math.max(maxRunTime, runTime);
-                                currentScores.put(seed, score);
-                                if (bestsFile != null) {
+                                if (results != null) {
+                                    String status = tester.isTimeout() ? ScoresFile.statusTimeout : score == tester.getErrorScore() ? ScoresFile.statusFail : ScoresFile.statusOk;
+                                    results.add(seed, score, runTime, status, tester.getErrorScore(), retrying ? 2 : 0);
+                                }
+                                if (bests != null) {
                                     if (best == null) {
                                         numNew++;
                                         if (score != tester.getErrorScore()) {
@@ -338,24 +715,54 @@ public class MarathonController {
                                     }
                                 }
                             }
+                            if (governor != null) governor.caseDone();
                         } catch (Exception e) {
                             System.out.println("ERROR calling tester " + className);
                             e.printStackTrace();
                             System.exit(-1);
                         }
                     }
+                } finally {
+                    //Retry slots wait for every worker, however it left the loop
+                    if (!retrying) mainDone.countDown();
                 }
-            }).start();
-        }
-        for (int i = 0; i < numThreads; i++) {
-            try {
-                threads[i].join();
-            } catch (InterruptedException e) {
+                if (server != null) server.close();
             }
-        }
-        if (scoresFile != null) {
-            saveScores(scoresFile, currentScores);
-        }
+
+            //Called by the retry slots after the last seed of the batch. Returns true once all
+            //workers finished their seeds
+            private boolean awaitMainDone() {
+                mainDone.countDown();
+                try {
+                    mainDone.await();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                return true;
+            }
+
+            //Run the probe seed of the governor (nothing is saved or reported), returning its run time
+            private long runProbe(long seed, SolutionServer server, int slot) {
+                try {
+                    MarathonTester tester = newTester(constructor, probeParameters, seed, timeLimit);
+                    tester.setSolutionServer(server);
+                    if (cpuSets != null) tester.setCpuSet(cpuSets.get(slot));
+                    tester.runTest();
+                    return tester.getRunTime();
+                } catch (Exception e) {
+                    System.out.println("ERROR calling tester " + className);
+                    e.printStackTrace();
+                    System.exit(-1);
+                }
+                return 0;
+            }
+        });
+        long makespan = (System.nanoTime() - batchStart) / 1_000_000;
+        String poolSummary = ProcessPool.getSummary();
+        ProcessPool.stop();
+        if (results != null) results.close();
+        if (runTimeHistory != null) runTimeHistory.save();
+        if (bests != null) bests.close();
         if (multipleSeeds && !parameters.isDefined(Parameters.noSummary)) {
             avgRunTime /= numCases;
             System.out.println();
@@ -364,7 +771,24 @@ public class MarathonController {
             System.out.println("     Failed Cases: " + numFails);
             System.out.println("    Avg. Run Time: " + avgRunTime + " ms");
             System.out.println("    Max. Run Time: " + maxRunTime + " ms");
-            if (bestsFile != null) {
+            long idleTime = Math.max(0, numThreads * makespan - busyTime);
+            System.out.println("         Makespan: " + makespan + " ms");
+            System.out.println("   Idle Core Time: " + idleTime + " ms (" + (makespan == 0 ? 0 : idleTime * 100 / (numThreads * makespan)) + "%)");
+            if (poolSummary != null) System.out.println(poolSummary);
+            if (retrySeeds != null) {
+                System.out.println(" Retried Timeouts: " + numRetried + " (with " + retryThreads + (retryThreads == 1 ? " thread)" : " threads)"));
+                System.out.println(" Genuine Timeouts: " + numTimeouts);
+            }
+            if (numThreads > 1 && (cpuSets != null || printRuntime)) {
+                DecimalFormat df = new DecimalFormat("0.0");
+                for (int i = 0; i < numThreads; i++) {
+                    if (slotCases[i] == 0) continue;
+                    double mean = slotSum[i] / slotCases[i];
+                    double sd = Math.sqrt(Math.max(0, slotSumSq[i] / slotCases[i] - mean * mean));
+                    System.out.println("   Slot " + i + (cpuSets == null ? "" : " (cpus " + cpuSets.get(i) + ")") + ": " + slotCases[i] + " cases, run time mean " + df.format(mean) + " ms, std. dev. " + df.format(sd) + " ms");
+                }
+            }
+            if (bests != null) {
                 DecimalFormat df = new DecimalFormat("0.00000");
                 System.out.println();
                 if (numImproved > 0) System.out.println("   Improved Bests: " + numImproved);
@@ -1,12 +1,9 @@
 package com.topcoder.marathon;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.security.NoSuchAlgorithmException;
@@ -14,10 +11,37 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Base class for Topcoder Marathon testers. Should be extended directly for
  * problems with no visualization. Updated: 2020/09/28
+ * 
+ * Updates:
+ *      2026/10/18 - Allow running a Java solution inside the tester JVM, with -execClass, 
+ *                   measuring the CPU time of its threads instead of the wall clock time.
+ *                 - Allow a single solution process to handle many test cases (-multiCase), 
+ *                   see SolutionServer.
+ *                 - Read the solution output as bytes (SolutionReader), with readLineTokens()
+ *                   and getToken*() to parse a line without creating objects.
+ *                 - Encode the solution input into a single buffer (SolutionWriter), written
+ *                   once per flush() to the process and the -saveSolInput file.
+ *                 - Time limits are checked by a single shared TimeoutWatchdog, instead of 
+ *                   a new thread for each startTime().
+ *                 - Bound the captured solution error output (head and tail are kept, see 
+ *                   -solErrorCapture) and rate limit its console echo (-solErrorEchoRate).
+ *                 - Saved transcripts are written by a background AsyncWriter, optionally 
+ *                   compressed with -gzip (files get a .gz suffix, read by -loadSolOutput).
+ *                 - Optional indexed transcripts (-transcript) for saved input and output, 
+ *                   with one turn per flush() (see TranscriptReader).
+ *                 - Saved outputs (-loadSolOutput, -rescore) are read from memory mapped files.
+ *                 - Split test case generation into prepare(), which can be called ahead of 
+ *                   runTest().
+ *                 - Optional on-disk cache of generated test cases (-caseCache), see CaseCache.
+ *                 - Add estimateRunTime(), a relative cost of the generated case used for
+ *                   scheduling (-runtimes).
+ *                 - Solution processes can be started on the cores of their worker slot 
+ *                   (-pinCores).
  */
 public abstract class MarathonTester {
     protected Parameters parameters;
@@ -27,20 +51,27 @@ public abstract class MarathonTester {
     protected boolean ending;
 
     private long elapsedTime, timeLimit, lastStart;
+    private boolean timing;
     private final Object timeLock = new Object();
-    private final List<BufferedWriter> solInputWriters = new ArrayList<BufferedWriter>();
-    private BufferedWriter solOutputWriter;
-    private BufferedWriter solErrorWriter;
-    private BufferedReader solOutputReader;
+    private final List<OutputStream> solInputStreams = new ArrayList<OutputStream>();
+    private final SolutionWriter solInput = new SolutionWriter(solInputStreams);
+    private OutputStream solOutputWriter;
+    private OutputStream solErrorWriter;
+    private TranscriptWriter solInputTranscript, solOutputTranscript;
+    private int numFlushes;
+    private SolutionReader solOutputReader;
     private ErrorReader solErrorReader;
     private Process process;
     private String solutionError = "";
     private String errorMessage = "";
-    private String lastLine = "";
     private StringBuilder executionErrors = new StringBuilder();
     private boolean timeout;
     private boolean readFailed;
-    private Thread lastTimeoutThread;
+    private TimeoutWatchdog.Entry timeoutEntry;
+    private SolutionServer solutionServer;
+    private boolean prepared;
+    private RuntimeException prepareError;
+    private String cpuSet;
 
     public void setParameters(Parameters parameters) {
         this.parameters = parameters;
@@ -51,6 +82,17 @@ public abstract class MarathonTester {
         this.timeLimit = timeLimitInMillis * 1_000_000;
     }
 
+    void setSolutionServer(SolutionServer solutionServer) {
+        this.solutionServer = solutionServer;
+    }
+
+    /**
+     * Cores the solution process is started on (see CpuAffinity).
+     */
+    void setCpuSet(String cpuSet) {
+        this.cpuSet = cpuSet;
+    }
+
     public void setSeed(long seed) {
         this.seed = seed;
         try {
@@ -69,6 +111,16 @@ public abstract class MarathonTester {
         return -1;
     }
 
+    /**
+     * Concrete MarathonTester implementations may override this method to return the expected
+     * relative cost of the generated test case (like N * N), used by -runtimes to schedule 
+     * seeds that have no runtime history yet. Called after generate(). A negative value means 
+     * unknown.
+     */
+    public double estimateRunTime() {
+        return -1;
+    }
+
     /**
      * Concrete implementations may override this method to be notified about
      * timeout. It usually makes sense when it is necessary to update the
@@ -94,58 +146,91 @@ public abstract class MarathonTester {
 
     protected final void startTime() {
         synchronized (timeLock) {
-            if (lastStart != 0) {
+            if (timing) {
                 System.out.println("ERROR startTime() was called again, before endTime() closed the first one.");
                 System.exit(-1);
             }
-            lastStart = System.nanoTime();
-            if (timeLimit > 0) {
-                lastTimeoutThread = new Thread() {
-                    public void run() {
-                        try {
-                            boolean finished = process.waitFor(timeLimit - elapsedTime, TimeUnit.NANOSECONDS);
-                            if (!finished) {
-                                synchronized (timeLock) {
-                                    if (lastStart > 0) elapsedTime += System.nanoTime() - lastStart;
-                                    lastStart = 0;
-                                    if (process != null) process.destroy();
-                                    if (!timeout) {
-                                        timeout = true;
-                                        timeout();
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                        }
+            timing = true;
+            lastStart = now();
+            if (timeLimit > 0 && process != null) armTimeout(timeLimit - elapsedTime);
+        }
+    }
+
+    private void armTimeout(long remaining) {
+        TimeoutWatchdog.Entry[] entry = new TimeoutWatchdog.Entry[1];
+        entry[0] = TimeoutWatchdog.arm(remaining, new Runnable() {
+            public void run() {
+                synchronized (timeLock) {
+                    if (timeoutEntry != entry[0] || !timing) return;
+                    timeoutEntry = null;
+                    if (!process.isAlive()) return;
+                    long used = elapsedTime + now() - lastStart;
+                    if (used < timeLimit) {
+                        // CPU time (of an in-process solution) is behind the wall clock
+                        armTimeout(timeLimit - used);
+                        return;
                     }
-                };
-                lastTimeoutThread.start();
+                    elapsedTime += now() - lastStart;
+                    timing = false;
+                    process.destroy();
+                    if (!timeout) {
+                        timeout = true;
+                        timeout();
+                    }
+                }
             }
-        }
+        });
+        timeoutEntry = entry[0];
     }
 
     protected final void stopTime() {
         synchronized (timeLock) {
-            try {
-                if (lastTimeoutThread != null && lastTimeoutThread.isAlive()) {
-                    lastTimeoutThread.interrupt();
-                    lastTimeoutThread = null;
-                }
-            } catch (Exception e) {
-            }
-            if (lastStart > 0) elapsedTime += System.nanoTime() - lastStart;
-            lastStart = 0;
+            TimeoutWatchdog.disarm(timeoutEntry);
+            timeoutEntry = null;
+            if (timing) elapsedTime += now() - lastStart;
+            timing = false;
+        }
+    }
+
+    private long now() {
+        if (process instanceof InProcessSolution) return ((InProcessSolution) process).getCpuTime();
+        return System.nanoTime();
+    }
+
+    /**
+     * Generate the test case ahead of runTest(), so the controller can overlap generation 
+     * with the execution of other tests. Must be called after setParameters() and setSeed().
+     */
+    public final void prepare() {
+        if (prepared) return;
+        prepared = true;
+        try {
+            generateCase();
+        } catch (RuntimeException e) {
+            prepareError = e;
         }
     }
 
+    private void generateCase() {
+        CaseCache cache = CaseCache.get(this, parameters);
+        if (cache != null && cache.load(this, seed)) return;
+        generate();
+        if (cache != null) cache.store(this, seed);
+    }
+
     public final double runTest() {
         double score = getErrorScore();
         try {
-            generate();
+            if (!prepared) {
+                prepared = true;
+                generateCase();
+            } else if (prepareError != null) {
+                throw prepareError;
+            }
             start();
             score = getErrorScore();
             score = run();
-            if (timeLimit > 0 && getRunTime() > timeLimit) {
+            if (timeLimit > 0 && elapsedTime > timeLimit) {
                 synchronized (timeLock) {
                     if (!timeout) {
                         timeout = true;
@@ -168,6 +253,8 @@ public abstract class MarathonTester {
                 System.out.println(msg);
                 executionErrors.append(msg).append("\n");
             }
+            // The server is in the middle of a case, so it can't be reused
+            if (solutionServer != null && !ending) solutionServer.discard();
         }
         if (timeout) {
             String msg = "TIMEOUT! Time limit of " + timeLimit / 1_000_000 + " ms exceeded.";
@@ -179,52 +266,131 @@ public abstract class MarathonTester {
     }
 
     protected final void writeLine(int v) throws Exception {
-        writeLine(String.valueOf(v));
+        if (solInputStreams.isEmpty()) return;
+        solInput.writeInt(v);
+        solInput.newLine();
+        solInput.drainIfLarge();
+    }
+
+    protected final void writeLine(long v) throws Exception {
+        if (solInputStreams.isEmpty()) return;
+        solInput.writeLong(v);
+        solInput.newLine();
+        solInput.drainIfLarge();
     }
 
     protected final void writeLine(String str) throws Exception {
-        for (BufferedWriter out : solInputWriters) {
-            out.write(str);
-            out.newLine();
-        }
+        if (solInputStreams.isEmpty()) return;
+        solInput.writeString(str);
+        solInput.newLine();
+        solInput.drainIfLarge();
+    }
+
+    /**
+     * Write the characters as a single line.
+     */
+    protected final void writeChars(char[] c) throws Exception {
+        if (solInputStreams.isEmpty()) return;
+        solInput.writeChars(c);
+        solInput.newLine();
+        solInput.drainIfLarge();
+    }
+
+    /**
+     * Write the grid with one line per row.
+     */
+    protected final void writeGrid(char[][] grid) throws Exception {
+        if (solInputStreams.isEmpty()) return;
+        solInput.writeGrid(grid);
+        solInput.drainIfLarge();
+    }
+
+    /**
+     * Write the grid with one line per cell, row by row.
+     */
+    protected final void writeCells(char[][] grid) throws Exception {
+        if (solInputStreams.isEmpty()) return;
+        solInput.writeCells(grid);
+        solInput.drainIfLarge();
     }
 
     protected final void flush() throws Exception {
-        for (BufferedWriter out : solInputWriters) {
-            out.flush();
-        }
+        solInput.flush();
+        if (solInputTranscript != null) solInputTranscript.markTurn();
+        // Output read since the previous flush is the answer to the previous input
+        if (solOutputTranscript != null && numFlushes > 0) solOutputTranscript.markTurn();
+        numFlushes++;
     }
 
     protected final int readLineToInt() throws Exception {
-        return Integer.parseInt(readLine());
+        nextLine();
+        return solOutputReader.getLineInt();
     }
 
     protected final int readLineToInt(int invalid) throws Exception {
+        nextLine();
         try {
-            String line = readLine();
-            return Integer.parseInt(line);
+            return solOutputReader.getLineInt();
         } catch (NumberFormatException e) {
             return invalid;
         }
     }
 
     protected final int[] readLineToIntArr() throws Exception {
-        String line = readLine();
-        String[] s = line.split(" ");
-        int[] arr = new int[s.length];
+        nextLine();
+        int[] arr = new int[solOutputReader.tokenize(false)];
         for (int i = 0; i < arr.length; i++) {
-            arr[i] = Integer.parseInt(s[i]);
+            arr[i] = solOutputReader.getTokenInt(i);
         }
         return arr;
     }
 
+    /**
+     * Same as readLineToIntArr(), into a reusable array. Returns the number of values read,
+     * or throws IndexOutOfBoundsException if they don't fit.
+     */
+    protected final int readLineToInts(int[] arr) throws Exception {
+        nextLine();
+        int n = solOutputReader.tokenize(false);
+        if (n > arr.length) throw new IndexOutOfBoundsException("Expected at most " + arr.length + " values, found " + n + ".");
+        for (int i = 0; i < n; i++) {
+            arr[i] = solOutputReader.getTokenInt(i);
+        }
+        return n;
+    }
+
+    /**
+     * Read a line and split it as line.trim().split(" ") would, returning the number of
+     * tokens. Tokens are then available with getToken(), getTokenInt() and getTokenLong().
+     */
+    protected final int readLineTokens() throws Exception {
+        nextLine();
+        return solOutputReader.tokenize(true);
+    }
+
+    protected final String getToken(int i) {
+        return solOutputReader.getToken(i);
+    }
+
+    protected final int getTokenInt(int i) {
+        return solOutputReader.getTokenInt(i);
+    }
+
+    protected final long getTokenLong(int i) {
+        return solOutputReader.getTokenLong(i);
+    }
+
     protected final String getLastLineRead() {
-        return lastLine;
+        return solOutputReader == null ? "" : solOutputReader.getLine();
     }
 
     protected final String readLine() throws Exception {
-        lastLine = solOutputReader.readLine();
-        if (lastLine == null) {
+        nextLine();
+        return solOutputReader.getLine();
+    }
+
+    private void nextLine() throws Exception {
+        if (!solOutputReader.readLine()) {
             readFailed = true;
             if (parameters.isDefined(Parameters.loadSolOutput)) {
                 throw new RuntimeException("Solution file unexpected end.");
@@ -234,11 +400,7 @@ public abstract class MarathonTester {
             }
             throw new RuntimeException("Failed to read output from solution.");
         }
-        if (solOutputWriter != null) {
-            solOutputWriter.write(lastLine);
-            solOutputWriter.newLine();
-        }
-        return lastLine;
+        if (solOutputWriter != null) solOutputReader.writeLine(solOutputWriter);
     }
 
     protected final boolean isReadActive() {
@@ -262,37 +424,56 @@ public abstract class MarathonTester {
     }
 
     private final void start() throws Exception {
+        boolean gzip = parameters.isDefined(Parameters.gzip);
+        boolean transcript = parameters.isDefined(Parameters.transcript);
         if (parameters.isDefined(Parameters.saveSolInput)) {
             String s = parameters.getStringNull(Parameters.saveSolInput);
             File folder = new File(s == null ? "." : s);
             if (!folder.exists()) folder.mkdirs();
-            BufferedWriter out = new BufferedWriter(new FileWriter(new File(folder, seed + ".in")));
-            solInputWriters.add(out);
+            if (transcript) solInputStreams.add(solInputTranscript = new TranscriptWriter(new File(folder, TranscriptWriter.fileName(seed + ".in"))));
+            else solInputStreams.add(new AsyncWriter(new File(folder, AsyncWriter.fileName(seed + ".in", gzip)), gzip));
         }
         if (parameters.isDefined(Parameters.saveSolOutput)) {
             String s = parameters.getStringNull(Parameters.saveSolOutput);
             File folder = new File(s == null ? "." : s);
             if (!folder.exists()) folder.mkdirs();
-            solOutputWriter = new BufferedWriter(new FileWriter(new File(folder, seed + ".out")));
+            if (transcript) solOutputWriter = solOutputTranscript = new TranscriptWriter(new File(folder, TranscriptWriter.fileName(seed + ".out")));
+            else solOutputWriter = new AsyncWriter(new File(folder, AsyncWriter.fileName(seed + ".out", gzip)), gzip);
         }
         if (parameters.isDefined(Parameters.saveSolError)) {
             String s = parameters.getStringNull(Parameters.saveSolError);
             File folder = new File(s == null ? "." : s);
             if (!folder.exists()) folder.mkdirs();
-            solErrorWriter = new BufferedWriter(new FileWriter(new File(folder, seed + ".err")));
+            solErrorWriter = new AsyncWriter(new File(folder, AsyncWriter.fileName(seed + ".err", gzip)), gzip);
         }
-        if (parameters.isDefined(Parameters.exec)) {
-            String cmd = parameters.getString(Parameters.exec);
+        if (parameters.isDefined(Parameters.exec) || parameters.isDefined(Parameters.execClass)) {
+            String cmd = parameters.getString(parameters.isDefined(Parameters.exec) ? Parameters.exec : Parameters.execClass);
             if (cmd != null) {
                 try {
                     boolean printMessages = true;
                     if (parameters.isDefined(Parameters.noOutput)) printMessages = false;
-                    process = Runtime.getRuntime().exec(cmd);
-                    solErrorReader = new ErrorReader(process.getErrorStream(), printMessages, solErrorWriter);
+                    if (solutionServer != null) {
+                        // A process that fails to acknowledge the case is replaced once
+                        for (int i = 0; ; i++) {
+                            if (!solutionServer.isAlive()) {
+                                Process p = startProcess();
+                                solutionServer.start(p, newErrorReader(p, printMessages, null));
+                            }
+                            solErrorReader = solutionServer.getErrorReader();
+                            solErrorReader.startCase(solErrorWriter);
+                            if (solutionServer.beginCase(seed)) break;
+                            if (i > 0) throw new IOException("Solution did not acknowledge " + SolutionServer.beginCase + " " + seed);
+                        }
+                        process = solutionServer.getProcess();
+                        solOutputReader = solutionServer.getReader();
+                        solInputStreams.add(solutionServer.getInput());
+                        return;
+                    }
+                    process = startProcess();
+                    solErrorReader = newErrorReader(process, printMessages, solErrorWriter);
                     solErrorReader.start();
-                    solOutputReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
-                    solInputWriters.add(out);
+                    solOutputReader = new SolutionReader(process.getInputStream());
+                    solInputStreams.add(process.getOutputStream());
                 } catch (Exception e) {
                     e.printStackTrace();
                     System.exit(-1);
@@ -306,18 +487,53 @@ public abstract class MarathonTester {
                 System.exit(-1);
             }
             File loadFile = new File(folder, seed + ".out");
+            File gzipFile = new File(folder, AsyncWriter.fileName(seed + ".out", true));
+            if (!loadFile.exists() && gzipFile.exists()) {
+                solOutputReader = new SolutionReader(new GZIPInputStream(new FileInputStream(gzipFile), 1 << 16));
+                return;
+            }
+            File transcriptFile = new File(folder, TranscriptWriter.fileName(seed + ".out"));
+            if (!loadFile.exists() && transcriptFile.exists()) {
+                solOutputReader = new SolutionReader(new TranscriptReader(transcriptFile).openStream());
+                return;
+            }
             if (!loadFile.exists()) {
                 System.out.println("ERROR can't find file " + loadFile.getPath());
                 System.exit(-1);
             }
-            solOutputReader = new BufferedReader(new FileReader(loadFile));
+            solOutputReader = SolutionReader.map(loadFile);
         }
     }
 
+    private ErrorReader newErrorReader(Process p, boolean printMessages, OutputStream errorWriter) {
+        int capture = ErrorReader.defaultCapture;
+        if (parameters.isDefined(Parameters.solErrorCapture)) capture = parameters.getIntValue(Parameters.solErrorCapture);
+        int echoRate = ErrorReader.defaultEchoRate;
+        if (parameters.isDefined(Parameters.solErrorEchoRate)) echoRate = parameters.getIntValue(Parameters.solErrorEchoRate);
+        return new ErrorReader(p.getErrorStream(), printMessages, errorWriter, capture, echoRate);
+    }
+
+    private Process startProcess() throws Exception {
+        if (parameters.isDefined(Parameters.execClass)) return InProcessSolution.start(parameters.getString(Parameters.execClass));
+        String cmd = parameters.getString(Parameters.exec);
+        if (cpuSet != null) return Runtime.getRuntime().exec(CpuAffinity.wrap(cmd, cpuSet));
+        Process p = ProcessPool.take(cmd);
+        if (p == null) p = Runtime.getRuntime().exec(cmd);
+        return p;
+    }
+
     protected void end() {
         if (ending) return;
         ending = true;
-        for (BufferedWriter out : solInputWriters) {
+        if (solutionServer != null && process != null) {
+            endServerCase();
+            return;
+        }
+        try {
+            solInput.flush();
+        } catch (Exception e) {
+        }
+        for (OutputStream out : solInputStreams) {
             try {
                 out.close();
             } catch (Exception e) {
@@ -335,16 +551,16 @@ public abstract class MarathonTester {
             } catch (Exception e) {
             }
         }
+        if (solErrorReader != null) {
+            solErrorReader.close();
+            solutionError = solErrorReader.getOutput();
+        }
         if (solErrorWriter != null) {
             try {
                 solErrorWriter.close();
             } catch (Exception e) {
             }
         }
-        if (solErrorReader != null) {
-            solErrorReader.close();
-            solutionError = solErrorReader.getOutput();
-        }
         if (process != null) {
             try {
                 process.destroy();
@@ -353,6 +569,35 @@ public abstract class MarathonTester {
         }
     }
 
+    private void endServerCase() {
+        OutputStream serverInput = solutionServer.getInput();
+        try {
+            solInput.flush();
+        } catch (Exception e) {
+        }
+        if (timeout || readFailed || !solutionServer.finishCase()) solutionServer.discard();
+        solutionError = solErrorReader.endCase();
+        for (OutputStream out : solInputStreams) {
+            if (out == serverInput) continue;
+            try {
+                out.close();
+            } catch (Exception e) {
+            }
+        }
+        if (solOutputWriter != null) {
+            try {
+                solOutputWriter.close();
+            } catch (Exception e) {
+            }
+        }
+        if (solErrorWriter != null) {
+            try {
+                solErrorWriter.close();
+            } catch (Exception e) {
+            }
+        }
+    }
+
     public final String getSolutionError() {
         return solutionError;
     }
@@ -1,6 +1,8 @@
 package com.topcoder.marathon;
 
 import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
@@ -44,6 +46,22 @@ import javax.swing.*;
  *                   main content, possibly together with -saveVis parameter). 
  *      2021/09/13 - Small change in the way the frame is created (waiting, instead of doing
  *                   it in the background).             
+ *      2026/10/18 - Record frames in update(), so paint() only renders the latest one and 
+ *                   intermediate frames are dropped (but kept in the history) when painting 
+ *                   can't keep up.
+ *                 - Play back the recorded history at the -fps rate. Keys: P (play/pause), 
+ *                   Left/Right (step), Home/End (first/last frame), +/- (faster/slower).
+ *                 - While the slider is moving (scrubbing, playback or a live run), paint a fast 
+ *                   preview (no antialiasing, nearest neighbour scaling, half resolution if a 
+ *                   full paint is slow), and repaint at full quality once it is idle. 
+ *                   It can be disabled with -noPreview.
+ *                 - Show a filmstrip of thumbnails of the recorded frames above the slider, 
+ *                   with optional sparklines of numeric info values (-sparklines "Score,Money").
+ *                   It can be hidden with -noFilmstrip.
+ *                 - Level of detail: filled shapes/images smaller than a screen pixel are merged 
+ *                   into a single raster, instead of drawn one by one (disabled by -noLOD).
+ *                 - Mouse click and check box callbacks run on the shared executor (Threads), 
+ *                   instead of a new thread for each event.
  */
 public abstract class MarathonVis extends MarathonTester {
     protected final Object updateLock = new Object();
@@ -62,7 +80,21 @@ public abstract class MarathonVis extends MarathonTester {
     private BufferedImage lastSavedImage;
 
     private ArrayList<Frame> frames = new ArrayList<>();
-    private int currentFrame = -1;
+    private volatile int currentFrame;
+    private Graphics2D measureGraphics;
+    private JSlider slider;
+    private Filmstrip filmstrip;
+    private JPanel timelinePanel;
+    private Timer playTimer;
+    private Timer previewTimer;
+    private volatile boolean preview;
+    private long fullPaintTime;
+    private BufferedImage previewImage;
+    private static final int previewIdleTime = 150;
+    private static final int previewSlowPaintTime = 25;
+    private long playStart;
+    private int playStartFrame;
+    final FramePacer framePacer = new FramePacer(100);
 
     protected abstract void paintContent(Graphics2D g);
 
@@ -78,6 +110,8 @@ public abstract class MarathonVis extends MarathonTester {
             vis = false;
         }
         if (parameters.isDefined(Parameters.size)) size = parameters.getIntValue(Parameters.size);
+        if (parameters.isDefined(Parameters.noLevelOfDetail)) Frame.levelOfDetail = false;
+        if (parameters.isDefined(Parameters.fps)) framePacer.setFps(parameters.getDoubleValue(Parameters.fps));
     }
 
     protected final void setInfoMaxDimension(int infoColumns, int infoLines) {
@@ -117,46 +151,134 @@ public abstract class MarathonVis extends MarathonTester {
                     hintsMap.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
                 }
                 Frame.hints = new RenderingHints(hintsMap);
+                Map<RenderingHints.Key, Object> previewMap = new HashMap<RenderingHints.Key, Object>();
+                previewMap.put(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+                previewMap.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                previewMap.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+                previewMap.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+                previewMap.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+                previewMap.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+                Frame.previewHints = new RenderingHints(previewMap);
 
                 frame = new JFrame();
                 frame.addWindowListener(new WindowAdapter() {
                     public void windowClosed(WindowEvent e) {
+                        stopPlayback();
+                        if (filmstrip != null) filmstrip.dispose();
                         end();
                     }
                 });
 
                 JPanel mainPanel = new JPanel(new BorderLayout());
-                JSlider slider = new JSlider(JSlider.HORIZONTAL, 0, 0, 0);
+                slider = new JSlider(JSlider.HORIZONTAL, 0, 0, 0);
                 slider.setMajorTickSpacing(10);
                 slider.setMinorTickSpacing(1);
-                slider.addChangeListener(changeEvent -> { currentFrame = slider.getValue(); panel.repaint(); });
+                slider.setFocusable(false);
+                if (!parameters.isDefined(Parameters.noFilmstrip)) {
+                    String keys = parameters.getStringNull(Parameters.sparklines);
+                    filmstrip = new Filmstrip(frames, updateLock, slider, keys == null ? new String[0] : keys.split(","));
+                }
+                slider.addChangeListener(changeEvent -> {
+                    currentFrame = slider.getValue();
+                    if (filmstrip != null) filmstrip.repaint();
+                    if (previewTimer != null) {
+                        preview = true;
+                        previewTimer.restart();
+                    }
+                    panel.repaint();
+                });
+                playTimer = new Timer((int) framePacer.getPeriodMillis(), e -> playbackTick());
+                if (!parameters.isDefined(Parameters.noPreview)) {
+                    previewTimer = new Timer(previewIdleTime, e -> {
+                        preview = false;
+                        panel.repaint();
+                    });
+                    previewTimer.setRepeats(false);
+                }
+                measureGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
                 panel = new JPanel() {
                     private static final long serialVersionUID = -1008231133177413855L;
 
                     public void paint(Graphics g) {
                         long t = System.currentTimeMillis();
+                        Frame frame = null;
                         synchronized (updateLock) {
-                            if (currentFrame >= frames.size()) {
-                                currentFrame = frames.size();
-                                CachedGraphics2D cached = new CachedGraphics2D((Graphics2D) g);
-                                paintContent(cached);
-                                Frame frame = new Frame(cached, infoMap, infoChecked, infoRects, infoSequence);
-                                infoMap = new HashMap<>();
-                                infoChecked = new HashMap<>();
-                                infoRects = new HashMap<>();
-                                infoSequence = new ArrayList<>();
-                                frames.add(frame);
-                                slider.setMaximum(frames.size() - 1);
-                                slider.setValue(frames.size() - 1);
+                            if (!frames.isEmpty()) frame = frames.get(Math.max(0, Math.min(currentFrame, frames.size() - 1)));
+                        }
+                        if (frame != null) {
+                            if (!preview) {
+                                frame.render((Graphics2D) g, getWidth(), getHeight());
+                                fullPaintTime = System.currentTimeMillis() - t;
+                            } else if (fullPaintTime > previewSlowPaintTime) {
+                                paintHalfResolution(g, frame);
+                            } else {
+                                frame.render((Graphics2D) g, getWidth(), getHeight(), true);
                             }
-                            frames.get(Math.min(currentFrame, frames.size() - 1)).render((Graphics2D) g, getWidth(), getHeight());
                         }
                         paintTime += System.currentTimeMillis() - t;
                         paintCnt++;
                     }
+
+                    private void paintHalfResolution(Graphics g, Frame frame) {
+                        int w = getWidth();
+                        int h = getHeight();
+                        int iw = (w + 1) / 2;
+                        int ih = (h + 1) / 2;
+                        if (previewImage == null || previewImage.getWidth() != iw || previewImage.getHeight() != ih) {
+                            previewImage = new BufferedImage(iw, ih, BufferedImage.TYPE_INT_RGB);
+                        }
+                        Graphics2D ig = previewImage.createGraphics();
+                        ig.scale(0.5, 0.5);
+                        frame.render(ig, w, h, true);
+                        ig.dispose();
+                        g.drawImage(previewImage, 0, 0, iw * 2, ih * 2, null);
+                    }
                 };
                 mainPanel.add(panel, BorderLayout.CENTER);
-                mainPanel.add(slider, BorderLayout.NORTH);
+                timelinePanel = new JPanel(new BorderLayout());
+                if (filmstrip != null) timelinePanel.add(filmstrip, BorderLayout.CENTER);
+                timelinePanel.add(slider, BorderLayout.SOUTH);
+                mainPanel.add(timelinePanel, BorderLayout.NORTH);
+
+                frame.addKeyListener(new KeyAdapter() {
+                    public void keyPressed(KeyEvent e) {
+                        switch (e.getKeyCode()) {
+                        case KeyEvent.VK_SPACE:
+                            togglePause();
+                            break;
+                        case KeyEvent.VK_P:
+                            togglePlayback();
+                            break;
+                        case KeyEvent.VK_LEFT:
+                            stopPlayback();
+                            slider.setValue(slider.getValue() - 1);
+                            break;
+                        case KeyEvent.VK_RIGHT:
+                            stopPlayback();
+                            stepForward();
+                            break;
+                        case KeyEvent.VK_HOME:
+                            stopPlayback();
+                            slider.setValue(0);
+                            break;
+                        case KeyEvent.VK_END:
+                            stopPlayback();
+                            slider.setValue(slider.getMaximum());
+                            break;
+                        case KeyEvent.VK_PLUS:
+                        case KeyEvent.VK_ADD:
+                        case KeyEvent.VK_EQUALS:
+                            changeSpeed(true);
+                            break;
+                        case KeyEvent.VK_MINUS:
+                        case KeyEvent.VK_SUBTRACT:
+                            changeSpeed(false);
+                            break;
+                        default:
+                            otherKeyPressed();
+                        }
+                    }
+                });
 
                 panel.addMouseListener(new MouseAdapter() {
                     public void mousePressed(MouseEvent e) {
@@ -164,27 +286,20 @@ public abstract class MarathonVis extends MarathonTester {
                             if (contentScreen.getWidth() > 0 && contentScreen.getHeight() > 0) {
                                 double x = (e.getX() - contentScreen.getX()) / contentScreen.getWidth() * Frame.contentRect.getWidth() + Frame.contentRect.getX();
                                 double y = (e.getY() - contentScreen.getY()) / contentScreen.getHeight() * Frame.contentRect.getHeight() + Frame.contentRect.getY();
-                                new Thread() {
-                                    public void run() {
-                                        contentClicked(x, y, e.getButton(), e.getClickCount());
-                                    }
-                                }.start();
+                                Threads.execute(() -> contentClicked(x, y, e.getButton(), e.getClickCount()));
                             }
                             return;
                         }
-                        for (Object key : infoRects.keySet()) {
-                            Rectangle2D rc = infoRects.get(key);
-                            if (rc != null && rc.contains(e.getPoint())) {
-                                Boolean checked = infoChecked.get(key);
-                                if (checked != null) {
-                                    infoChecked.put(key, !checked);
-                                    new Thread() {
-                                        public void run() {
-                                            checkChanged(key, !checked);
-                                        }
-                                    }.start();
-                                }
-                                break;
+                        Frame frame = null;
+                        synchronized (updateLock) {
+                            if (!frames.isEmpty()) frame = frames.get(Math.max(0, Math.min(currentFrame, frames.size() - 1)));
+                        }
+                        Object key = frame == null ? null : frame.getCheckBox(e.getPoint());
+                        if (key != null) {
+                            Boolean checked = infoChecked.get(key);
+                            if (checked != null) {
+                                infoChecked.put(key, !checked);
+                                Threads.execute(() -> checkChanged(key, !checked));
                             }
                         }
                     }
@@ -224,12 +339,78 @@ public abstract class MarathonVis extends MarathonTester {
                 } catch (Exception e) {
                 }
             }
+            addFrame();
         }
         if (parameters.isDefined(Parameters.saveVis)) saveVis();
-        currentFrame++;
         panel.repaint();
     }
 
+    private void addFrame() {
+        CachedGraphics2D cached = new CachedGraphics2D(measureGraphics);
+        paintContent(cached);
+        frames.add(new Frame(cached, infoMap, infoChecked, infoRects, infoSequence));
+        infoMap = new HashMap<>(infoMap);
+        infoChecked = new HashMap<>(infoChecked);
+        synchronized (infoRects) {
+            infoRects = new HashMap<>(infoRects);
+        }
+        infoSequence = new ArrayList<>(infoSequence);
+        int last = frames.size() - 1;
+        SwingUtilities.invokeLater(() -> {
+            boolean follow = slider.getValue() >= slider.getMaximum() && !playTimer.isRunning();
+            slider.setMaximum(last);
+            if (follow) slider.setValue(last);
+            if (filmstrip != null) filmstrip.repaint();
+        });
+    }
+
+    void togglePause() {
+        togglePlayback();
+    }
+
+    void stepForward() {
+        slider.setValue(slider.getValue() + 1);
+    }
+
+    void otherKeyPressed() {
+    }
+
+    final boolean isLastFrameShown() {
+        return slider.getValue() >= slider.getMaximum();
+    }
+
+    private void togglePlayback() {
+        if (playTimer.isRunning()) {
+            stopPlayback();
+            return;
+        }
+        if (isLastFrameShown()) slider.setValue(0);
+        restartPlayback();
+        playTimer.start();
+    }
+
+    private void stopPlayback() {
+        playTimer.stop();
+    }
+
+    private void restartPlayback() {
+        playStart = System.nanoTime();
+        playStartFrame = slider.getValue();
+        playTimer.setDelay((int) framePacer.getPeriodMillis());
+    }
+
+    private void playbackTick() {
+        int target = (int) Math.min(slider.getMaximum(), playStartFrame + framePacer.framesSince(playStart));
+        if (target != slider.getValue()) slider.setValue(target);
+        if (isLastFrameShown()) stopPlayback();
+    }
+
+    private void changeSpeed(boolean faster) {
+        if (faster) framePacer.faster();
+        else framePacer.slower();
+        if (playTimer.isRunning()) restartPlayback();
+    }
+
     private void saveVis() {
         int w = panel.getWidth();
         if (w > 0) {
@@ -239,7 +420,9 @@ public abstract class MarathonVis extends MarathonTester {
             if (!folder.exists()) folder.mkdirs();
             BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_BGR);
             Graphics2D g = img.createGraphics();
-            frames.get(currentFrame).render(g, w, h);
+            synchronized (updateLock) {
+                frames.get(frames.size() - 1).render(g, w, h);
+            }
             g.dispose();
             try {
                 synchronized (updateLock) {
@@ -368,7 +551,7 @@ public abstract class MarathonVis extends MarathonTester {
                 }
                 Insets fi = frame.getInsets();
                 int fw = bounds.width - fi.left - fi.right;
-                int fh = bounds.height - fi.top - fi.bottom;
+                int fh = bounds.height - fi.top - fi.bottom - timelinePanel.getPreferredSize().height;
                 double sw = (fw - 3 * Frame.border - Frame.infoColumns * Frame.infoFontWidth) / Frame.contentRect.getWidth();
                 double sh = (fh - 2 * Frame.border) / Frame.contentRect.getHeight();
                 size = Math.min(sw, sh);
@@ -395,6 +578,7 @@ public abstract class MarathonVis extends MarathonTester {
         if (paintCnt > 0 && parameters.isDefined(Parameters.paintInfo)) {
             System.out.println("    Paint Count: " + paintCnt);
             System.out.println("Paint Avg. Time: " + paintTime / paintCnt + " ms");
+            System.out.println("    Late Frames: " + framePacer.getLateFrames());
         }
         super.end();
     }
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  *  Updates: 
@@ -11,17 +12,33 @@ import java.util.Map;
  */
 public class Parameters {
     public static final String controlBests = "bests";
+    public static final String caseCache = "caseCache";
     public static final String debug = "debug";
     public static final String delay = "delay";
     public static final String exec = "exec";
+    public static final String execClass = "execClass";
+    public static final String fps = "fps";
+    public static final String gzip = "gzip";
     public static final String infoScale = "infoScale";
     public static final String loadSolOutput = "loadSolOutput";
+    public static final String maxRunTimeError = "maxRunTimeError";
+    public static final String multiCase = "multiCase";
     public static final String noAntialiasing = "noAntialiasing";
+    public static final String noFilmstrip = "noFilmstrip";
+    public static final String noLevelOfDetail = "noLOD";
     public static final String noOutput = "noOutput";
+    public static final String noPreview = "noPreview";
     public static final String noSummary = "noSummary";
     public static final String noVis = "novis";
     public static final String paintInfo = "paintInfo";
+    public static final String pinCores = "pinCores";
     public static final String printRuntime = "printRuntime";
+    public static final String processPool = "processPool";
+    public static final String rerunFailed = "rerunFailed";
+    public static final String rescore = "rescore";
+    public static final String resume = "resume";
+    public static final String retryTimeouts = "retryTimeouts";
+    public static final String runTimes = "runtimes";
     public static final String saveAll = "saveAll";
     public static final String saveScores = "saveScores";
     public static final String saveSolError = "saveSolError";
@@ -30,41 +47,65 @@ public class Parameters {
     public static final String saveVis = "saveVis";
     public static final String screen = "screen";
     public static final String seed = "seed";
+    public static final String seedOrder = "seedOrder";
     public static final String size = "size";
+    public static final String solErrorCapture = "solErrorCapture";
+    public static final String solErrorEchoRate = "solErrorEchoRate";
+    public static final String sparklines = "sparklines";
     public static final String startPaused = "pause";
     public static final String windowPosition = "windowPos";
     public static final String threads = "threads";
     public static final String timeLimit = "timeLimit";
-
-    public static final int maxListLen = 1_000_000;
+    public static final String transcript = "transcript";
 
     private static final Map<String, String> equivalentParams = new HashMap<String, String>();
 
     static {
         equivalentParams.put("bs", controlBests);
+        equivalentParams.put("cc", caseCache);
         equivalentParams.put("db", debug);
         equivalentParams.put("dl", delay);
+        equivalentParams.put("ec", execClass);
         equivalentParams.put("ex", exec);
+        equivalentParams.put("fp", fps);
+        equivalentParams.put("gz", gzip);
         equivalentParams.put("is", infoScale);
         equivalentParams.put("lo", loadSolOutput);
+        equivalentParams.put("me", maxRunTimeError);
+        equivalentParams.put("mc", multiCase);
         equivalentParams.put("na", noAntialiasing);
+        equivalentParams.put("nf", noFilmstrip);
+        equivalentParams.put("nl", noLevelOfDetail);
         equivalentParams.put("no", noOutput);
+        equivalentParams.put("np", noPreview);
         equivalentParams.put("ns", noSummary);
         equivalentParams.put("nv", noVis);
         equivalentParams.put("pi", paintInfo);
+        equivalentParams.put("pc", pinCores);
+        equivalentParams.put("pp", processPool);
         equivalentParams.put("pr", printRuntime);
         equivalentParams.put("ps", startPaused);
+        equivalentParams.put("rf", rerunFailed);
+        equivalentParams.put("rm", resume);
+        equivalentParams.put("rs", rescore);
+        equivalentParams.put("ry", retryTimeouts);
+        equivalentParams.put("rt", runTimes);
         equivalentParams.put("sa", saveAll);
         equivalentParams.put("sc", screen);
         equivalentParams.put("sd", seed);
+        equivalentParams.put("sq", seedOrder);
         equivalentParams.put("se", saveSolError);
         equivalentParams.put("si", saveSolInput);
         equivalentParams.put("so", saveSolOutput);
         equivalentParams.put("ss", saveScores);
         equivalentParams.put("sv", saveVis);
+        equivalentParams.put("sl", sparklines);
         equivalentParams.put("sz", size);
+        equivalentParams.put("ea", solErrorCapture);
+        equivalentParams.put("er", solErrorEchoRate);
         equivalentParams.put("th", threads);
         equivalentParams.put("tl", timeLimit);
+        equivalentParams.put("tr", transcript);
         equivalentParams.put("wp", windowPosition);
     }
 
@@ -74,6 +115,12 @@ public class Parameters {
         return params.toString();
     }
 
+    Parameters copy() {
+        Parameters p = new Parameters();
+        p.params.putAll(params);
+        return p;
+    }
+
     public void put(String key, String value) {
         if (equivalentParams.containsKey(key)) key = equivalentParams.get(key);
         params.put(normalize(key), value);
@@ -88,39 +135,36 @@ public class Parameters {
     }
 
     public List<Long> getLongList(String key) {
+        SeedSource source = getSeedSource(key);
+        return source == null ? null : source.toList();
+    }
+
+    /**
+     * Values of a range, list or repeated range/list (like 1,50*5 or {3,8}*2), without 
+     * storing them.
+     */
+    SeedSource getSeedSource(String key) {
         String val = params.get(normalize(key));
         if (val == null) return null;
         try {
-            List<Long> l = new ArrayList<Long>();
             int pos = val.indexOf("*");
-            int mult = 1;
-            if (pos > 0 && pos < val.length() - 1) mult = Integer.parseInt(val.substring(pos + 1));
+            long mult = 1;
+            if (pos > 0 && pos < val.length() - 1) mult = Long.parseLong(val.substring(pos + 1));
+            SeedSource source = null;
             if (val.startsWith("{")) {
                 int close = val.indexOf("}");
                 if (close < 0) return null;
                 String[] s = val.substring(1, close).trim().split(",");
+                List<Long> l = new ArrayList<Long>();
                 for (int i = 0; i < s.length; i++) {
                     l.add(Long.parseLong(s[i].trim()));
                 }
-            } else if (pos > 0) {
-                long[] range = getLongRangeFromValue(val.substring(0, pos));
-                long start = range[0];
-                long end = range[1];
-                if (end > maxListLen + start) end = maxListLen + start;
-                for (long i = start; i <= end; i++) {
-                    l.add(i);
-                }
+                source = SeedSource.of(l);
             } else {
-                return null;
+                long[] range = getLongRangeFromValue(pos > 0 ? val.substring(0, pos) : val);
+                source = SeedSource.range(range[0], range[1]);
             }
-            if (mult > 1) {
-                List<Long> aux = new ArrayList<Long>(l);
-                for (int i = 1; i < mult && l.size() < maxListLen; i++) {
-                    l.addAll(aux);
-                }
-                if (l.size() > maxListLen) l.subList(maxListLen, l.size()).clear();
-            }
-            return l;
+            return mult > 1 ? source.repeat(mult) : source;
         } catch (Exception e) {
             error("ERROR getting parameter long value/range/list!", e, key, val);
         }
@@ -230,6 +274,17 @@ public class Parameters {
         return params.get(key.toLowerCase());
     }
 
+    /**
+     * Parameters that are not handled by the framework (problem specific ones), sorted by key.
+     */
+    Map<String, String> getProblemParameters() {
+        Map<String, String> m = new TreeMap<String, String>(params);
+        for (String key : equivalentParams.values()) {
+            m.remove(normalize(key));
+        }
+        return m;
+    }
+
     private void error(String msg, Exception e, String key, String value) {
         System.err.println(msg + "\n    key = " + key + "\n    value = " + value);
         if (e != null) e.printStackTrace();
@@ -0,0 +1,312 @@
+package com.topcoder.marathon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional pool of solution processes (-processPool K), started ahead of time while the current
+ * seeds run, so the process creation and startup (e.g. JVM or Python initialization) are not
+ * paid by each test. With fewer seeds than the pool size, only one process per seed is started;
+ * the idle ones are destroyed at the end of the batch (or on exit).
+ *
+ * The error stream of each pooled process is drained from the start, so a solution writing
+ * to it while it waits in the pool doesn't block on a full pipe. What it writes while idle is
+ * kept (up to idleErrorLimit bytes) and read first from the error stream of the process that
+ * is handed out.
+ */
+class ProcessPool {
+    private static final int idleErrorLimit = 1 << 20;
+    private static volatile ProcessPool instance;
+
+    private final String cmd;
+    private final int size;
+    private final ArrayDeque<WarmProcess> idle = new ArrayDeque<WarmProcess>();
+    private long remaining;
+    private boolean running = true;
+    private int handedOut, warmHits;
+    private long spawnTimeSaved, warmupOverlap;
+
+    private static class WarmProcess {
+        private final Process process;
+        private final long spawnTime;
+        private final long readyAt;
+
+        private WarmProcess(Process process, long spawnTime, long readyAt) {
+            this.process = process;
+            this.spawnTime = spawnTime;
+            this.readyAt = readyAt;
+        }
+    }
+
+    /**
+     * Pooled process, with its error stream read through an ErrorDrain.
+     */
+    private static class PooledProcess extends Process {
+        private final Process process;
+        private final ErrorDrain error;
+
+        private PooledProcess(Process process) {
+            this.process = process;
+            error = new ErrorDrain(process.getErrorStream());
+            Threads.execute(error);
+        }
+
+        public OutputStream getOutputStream() {
+            return process.getOutputStream();
+        }
+
+        public InputStream getInputStream() {
+            return process.getInputStream();
+        }
+
+        public InputStream getErrorStream() {
+            return error;
+        }
+
+        public int waitFor() throws InterruptedException {
+            return process.waitFor();
+        }
+
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            return process.waitFor(timeout, unit);
+        }
+
+        public boolean isAlive() {
+            return process.isAlive();
+        }
+
+        public int exitValue() {
+            return process.exitValue();
+        }
+
+        public void destroy() {
+            process.destroy();
+        }
+
+        public Process destroyForcibly() {
+            process.destroyForcibly();
+            return this;
+        }
+
+        public long pid() {
+            return process.pid();
+        }
+    }
+
+    /**
+     * Reads an error stream into memory as soon as the process starts. While the process is
+     * idle (nobody reads this stream), bytes over idleErrorLimit are dropped. Once it is read, 
+     * the drain waits for the reader instead, like a normal pipe.
+     */
+    private static class ErrorDrain extends InputStream implements Runnable {
+        private final InputStream in;
+        private final ArrayDeque<byte[]> chunks = new ArrayDeque<byte[]>();
+        private int chunkPos, buffered;
+        private long dropped;
+        private boolean reading, eof, closed;
+
+        private ErrorDrain(InputStream in) {
+            this.in = in;
+        }
+
+        public void run() {
+            byte[] b = new byte[8192];
+            try {
+                int n;
+                while ((n = in.read(b)) > 0) {
+                    add(Arrays.copyOf(b, n));
+                }
+            } catch (IOException e) {
+            } catch (InterruptedException e) {
+            }
+            synchronized (this) {
+                eof = true;
+                notifyAll();
+            }
+        }
+
+        private synchronized void add(byte[] chunk) throws InterruptedException {
+            while (reading && buffered >= idleErrorLimit && !closed) {
+                wait();
+            }
+            if (closed) return;
+            if (!reading && buffered >= idleErrorLimit) {
+                dropped += chunk.length;
+                return;
+            }
+            chunks.addLast(chunk);
+            buffered += chunk.length;
+            notifyAll();
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!reading) {
+                reading = true;
+                if (dropped > 0) {
+                    byte[] note = ("\n[... " + dropped + " bytes written while in the process pool dropped ...]\n").getBytes();
+                    chunks.addLast(note);
+                    buffered += note.length;
+                }
+            }
+            while (chunks.isEmpty()) {
+                if (eof || closed) return -1;
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            byte[] chunk = chunks.peekFirst();
+            int n = Math.min(len, chunk.length - chunkPos);
+            System.arraycopy(chunk, chunkPos, b, off, n);
+            chunkPos += n;
+            buffered -= n;
+            if (chunkPos == chunk.length) {
+                chunks.pollFirst();
+                chunkPos = 0;
+            }
+            notifyAll();
+            return n;
+        }
+
+        public synchronized int available() {
+            return buffered;
+        }
+
+        public void close() throws IOException {
+            synchronized (this) {
+                closed = true;
+                chunks.clear();
+                buffered = 0;
+                notifyAll();
+            }
+            in.close();
+        }
+    }
+
+    private ProcessPool(String cmd, int size, long remaining) {
+        this.cmd = cmd;
+        this.size = size;
+        this.remaining = remaining < size ? remaining : Long.MAX_VALUE;
+    }
+
+    /**
+     * numProcesses is the number of processes that will be used, which only limits the pool
+     * if it is below its size (so counting up to the pool size is enough).
+     */
+    public static void start(String cmd, int size, long numProcesses) {
+        ProcessPool pool = new ProcessPool(cmd, Math.max(1, size), numProcesses);
+        Thread spawner = new Thread(pool::spawnLoop, "ProcessPool");
+        spawner.setDaemon(true);
+        spawner.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::shutdown));
+        instance = pool;
+    }
+
+    /**
+     * Returns a started process for the given command, or null if there is no pool for it.
+     */
+    public static Process take(String cmd) throws IOException {
+        ProcessPool pool = instance;
+        if (pool == null || !pool.cmd.equals(cmd)) return null;
+        return pool.take();
+    }
+
+    public static void stop() {
+        ProcessPool pool = instance;
+        if (pool == null) return;
+        instance = null;
+        pool.shutdown();
+    }
+
+    /**
+     * Summary lines of the current pool, or null if there is no pool.
+     */
+    public static String getSummary() {
+        ProcessPool pool = instance;
+        if (pool == null) return null;
+        synchronized (pool) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("   Warm Processes: ").append(pool.warmHits).append(" of ").append(pool.handedOut).append('\n');
+            sb.append(" Spawn Time Saved: ").append(pool.spawnTimeSaved / 1_000_000).append(" ms\n");
+            sb.append("  Warm-up Overlap: ").append(pool.warmupOverlap / 1_000_000).append(" ms");
+            return sb.toString();
+        }
+    }
+
+    private Process take() throws IOException {
+        while (true) {
+            WarmProcess warm;
+            synchronized (this) {
+                if (remaining > 0) remaining--;
+                handedOut++;
+                warm = idle.pollFirst();
+                notifyAll();
+            }
+            if (warm == null) return Runtime.getRuntime().exec(cmd);
+            if (warm.process.isAlive()) {
+                synchronized (this) {
+                    warmHits++;
+                    spawnTimeSaved += warm.spawnTime;
+                    warmupOverlap += System.nanoTime() - warm.readyAt;
+                }
+                return warm.process;
+            }
+            // Died while waiting (e.g. it failed to start), try the next one
+            warm.process.destroy();
+            synchronized (this) {
+                handedOut--;
+                remaining++;
+            }
+        }
+    }
+
+    private void spawnLoop() {
+        while (true) {
+            synchronized (this) {
+                while (running && idle.size() >= Math.min(size, remaining)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) return;
+            }
+            try {
+                long t = System.nanoTime();
+                Process process = new PooledProcess(Runtime.getRuntime().exec(cmd));
+                long now = System.nanoTime();
+                synchronized (this) {
+                    if (running) idle.addLast(new WarmProcess(process, now - t, now));
+                    else process.destroy();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private void shutdown() {
+        synchronized (this) {
+            running = false;
+            for (WarmProcess warm : idle) {
+                warm.process.destroy();
+            }
+            idle.clear();
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.topcoder.marathon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Run time history of the seeds (-runtimes file), used to start the longest test cases first,
+ * so a slow seed is not picked up at the end of a batch, while the other cores are idle.
+ *
+ * Each line of the file is "seed=runTime" or "seed=runTime,cost", with the wall clock time of
+ * the whole test case, in milliseconds, and the relative cost estimated by the tester (see
+ * MarathonTester.estimateRunTime()). The file is rewritten after each batch, keeping the
+ * latest run time of each seed.
+ */
+class RunTimeHistory {
+    private final File file;
+    private final Map<Long, Long> runTimes = new TreeMap<Long, Long>();
+    private final Map<Long, Double> costs = new TreeMap<Long, Double>();
+
+    public RunTimeHistory(File file) {
+        this.file = file;
+        if (!file.exists()) return;
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line = null;
+            while ((line = in.readLine()) != null) {
+                String[] s = line.split("=");
+                if (s.length != 2) continue;
+                long seed = Long.parseLong(s[0]);
+                String[] v = s[1].split(",");
+                runTimes.put(seed, Long.parseLong(v[0]));
+                if (v.length > 1) costs.put(seed, Double.parseDouble(v[1]));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized boolean contains(long seed) {
+        return runTimes.containsKey(seed);
+    }
+
+    /**
+     * Sort the seeds by expected run time, longest first. Seeds without history use the cost
+     * estimates, converted to milliseconds by the ratio observed in the history. If there is
+     * no such ratio, they go first (sorted by cost), as they may be the longest ones. Seeds
+     * with neither history nor estimate go first, in their original order.
+     */
+    public synchronized void sort(List<Long> seeds, Map<Long, Double> estimates) {
+        double sumTime = 0;
+        double sumCost = 0;
+        for (long seed : costs.keySet()) {
+            double cost = costs.get(seed);
+            if (cost <= 0) continue;
+            sumTime += runTimes.get(seed);
+            sumCost += cost;
+        }
+        double ratio = sumCost > 0 ? sumTime / sumCost : -1;
+
+        //Tier 0 (unknown run times) first, then by decreasing value
+        Map<Long, double[]> keys = new TreeMap<Long, double[]>();
+        for (long seed : seeds) {
+            Long runTime = runTimes.get(seed);
+            Double cost = estimates.get(seed);
+            double[] key = null;
+            if (runTime != null) key = new double[] {1, runTime};
+            else if (cost == null || cost < 0) key = new double[] {0, Double.POSITIVE_INFINITY};
+            else if (ratio < 0) key = new double[] {0, cost};
+            else key = new double[] {1, cost * ratio};
+            keys.put(seed, key);
+        }
+        List<Long> sorted = new ArrayList<Long>(seeds);
+        sorted.sort(Comparator.comparingDouble((Long seed) -> keys.get(seed)[0]).thenComparingDouble(seed -> -keys.get(seed)[1]));
+        seeds.clear();
+        seeds.addAll(sorted);
+    }
+
+    public synchronized void record(long seed, long runTime, double cost) {
+        runTimes.put(seed, runTime);
+        if (cost >= 0) costs.put(seed, cost);
+        else costs.remove(seed);
+    }
+
+    public synchronized void save() {
+        try {
+            if (file.getParentFile() != null && !file.getParentFile().exists()) file.getParentFile().mkdirs();
+            File tmpFile = new File(file.getPath() + ".tmp");
+            BufferedWriter out = new BufferedWriter(new FileWriter(tmpFile));
+            StringBuilder sb = new StringBuilder();
+            for (long seed : runTimes.keySet()) {
+                sb.delete(0, sb.length());
+                sb.append(seed).append('=').append(runTimes.get(seed));
+                Double cost = costs.get(seed);
+                if (cost != null) sb.append(',').append(cost);
+                out.write(sb.toString());
+                out.newLine();
+            }
+            out.close();
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
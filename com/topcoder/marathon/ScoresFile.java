@@ -0,0 +1,155 @@
+package com.topcoder.marathon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Scores file (-saveScores), written as each test case finishes, so an interrupted batch
+ * keeps its results and can be continued with -resume (or -rerunFailed). Each line is
+ *
+ *      seed=score;runTime=ms;status=ok|fail|timeout;errorScore=value[;attempt=1|2]
+ *
+ * and it is flushed when it is written. A timed out seed that is run again (-retryTimeouts)
+ * has two lines, attempt=1 with the timeout and attempt=2 with the retry. At the end of the 
+ * batch the file is rewritten sorted by seed, with only the latest result of each seed (and 
+ * the first attempt before a retry). The last line of a seed is its result. Lines with just 
+ * "seed=score" (written by older versions) count as completed.
+ */
+class ScoresFile {
+    public static final String statusOk = "ok";
+    public static final String statusFail = "fail";
+    public static final String statusTimeout = "timeout";
+
+    private final File file;
+    private final Map<Long, String> lines = new TreeMap<Long, String>();
+    private final Map<Long, String> status = new TreeMap<Long, String>();
+    private final Map<Long, String> firstAttempts = new TreeMap<Long, String>();
+    private BufferedWriter out;
+
+    public ScoresFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the results of a previous (possibly interrupted) batch.
+     */
+    public void read() throws IOException {
+        if (!file.exists()) return;
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line = null;
+            while ((line = in.readLine()) != null) {
+                String[] s = line.split(";");
+                String[] kv = s[0].split("=");
+                if (kv.length != 2) continue;
+                long seed = 0;
+                try {
+                    seed = Long.parseLong(kv[0]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                String st = statusOk;
+                int attempt = 0;
+                for (int i = 1; i < s.length; i++) {
+                    if (s[i].startsWith("status=")) st = s[i].substring(7);
+                    else if (s[i].equals("attempt=1")) attempt = 1;
+                    else if (s[i].equals("attempt=2")) attempt = 2;
+                }
+                put(seed, line, st, attempt);
+            }
+        }
+    }
+
+    public boolean isDone(long seed) {
+        return status.containsKey(seed);
+    }
+
+    public boolean isFailed(long seed) {
+        String st = status.get(seed);
+        return statusFail.equals(st) || statusTimeout.equals(st);
+    }
+
+    public List<Long> getFailedSeeds() {
+        List<Long> l = new ArrayList<Long>();
+        for (long seed : status.keySet()) {
+            if (isFailed(seed)) l.add(seed);
+        }
+        return l;
+    }
+
+    /**
+     * Start writing, after the previous results if append is set (otherwise they are removed).
+     */
+    public void open(boolean append) throws IOException {
+        if (!append) {
+            lines.clear();
+            status.clear();
+            firstAttempts.clear();
+        }
+        out = new BufferedWriter(new FileWriter(file, append));
+    }
+
+    /**
+     * Write the result of a seed. Attempt is 1 for a timeout that will be retried, 2 for the 
+     * retry, and 0 otherwise.
+     */
+    public synchronized void add(long seed, double score, long runTime, String st, double errorScore, int attempt) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(seed).append('=').append(score);
+        sb.append(";runTime=").append(runTime);
+        sb.append(";status=").append(st);
+        sb.append(";errorScore=").append(errorScore);
+        if (attempt > 0) sb.append(";attempt=").append(attempt);
+        String line = sb.toString();
+        put(seed, line, st, attempt);
+        try {
+            out.write(line);
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Keep the latest result of the seed, and its first attempt if this is a retry
+    private void put(long seed, String line, String st, int attempt) {
+        if (attempt == 1) firstAttempts.put(seed, line);
+        else if (attempt != 2) firstAttempts.remove(seed);
+        lines.put(seed, line);
+        status.put(seed, st);
+    }
+
+    /**
+     * Rewrite the file sorted by seed, with the latest result of each seed (after its first
+     * attempt, for retried seeds).
+     */
+    public synchronized void close() {
+        try {
+            out.close();
+            File tmpFile = new File(file.getPath() + ".tmp");
+            BufferedWriter w = new BufferedWriter(new FileWriter(tmpFile));
+            for (Map.Entry<Long, String> e : lines.entrySet()) {
+                String first = firstAttempts.get(e.getKey());
+                if (first != null && !first.equals(e.getValue())) {
+                    w.write(first);
+                    w.newLine();
+                }
+                w.write(e.getValue());
+                w.newLine();
+            }
+            w.close();
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
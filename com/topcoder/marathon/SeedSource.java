@@ -0,0 +1,240 @@
+package com.topcoder.marathon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * Sequence of seeds to be tested, computed from its position instead of being stored, so a
+ * range of any length uses constant memory. Sources are combined as ranges, lists,
+ * repetitions (whole sequence, like -sd 1,50*5), shuffled and strided orders, and filters.
+ *
+ * Workers take seeds with claim(), which moves a shared atomic cursor, without locks.
+ *
+ * Filtered sources are only meant to be claimed or listed (toList()): their positions are
+ * the ones of the source they filter, so get() only takes positions returned by claim(), and
+ * size() has to test every seed (count() and first() stop early).
+ */
+abstract class SeedSource {
+    private final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * Number of seeds.
+     */
+    public abstract long size();
+
+    /**
+     * Seed at the given position, as returned by claim() (for sources that are not filtered,
+     * any 0 <= index < size()).
+     */
+    public abstract long get(long index);
+
+    /**
+     * Number of seeds, counting at most max of them.
+     */
+    public long count(long max) {
+        return Math.min(size(), max);
+    }
+
+    /**
+     * First seed, which must exist (count(1) == 1).
+     */
+    public long first() {
+        return get(0);
+    }
+
+    /**
+     * Claim the next position, returning -1 when all of them were claimed.
+     */
+    public long claim() {
+        long i = cursor.getAndIncrement();
+        return i < size() ? i : -1;
+    }
+
+    public List<Long> toList() {
+        List<Long> l = new ArrayList<Long>();
+        for (long i = 0; i < size(); i++) {
+            l.add(get(i));
+        }
+        return l;
+    }
+
+    public static SeedSource range(long start, long end) {
+        return new SeedSource() {
+            public long size() {
+                return Math.max(0, end - start + 1);
+            }
+
+            public long get(long index) {
+                return start + index;
+            }
+        };
+    }
+
+    public static SeedSource of(List<Long> seeds) {
+        long[] values = new long[seeds.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = seeds.get(i);
+        }
+        return new SeedSource() {
+            public long size() {
+                return values.length;
+            }
+
+            public long get(long index) {
+                return values[(int) index];
+            }
+        };
+    }
+
+    /**
+     * The whole sequence, repeated the given number of times.
+     */
+    public SeedSource repeat(long times) {
+        SeedSource base = this;
+        return new SeedSource() {
+            public long size() {
+                return base.size() * times;
+            }
+
+            public long get(long index) {
+                return base.get(index % base.size());
+            }
+        };
+    }
+
+    /**
+     * Pseudo-random order, the same for the same key. Positions are mapped by a Feistel network
+     * (a bijection) on the smallest even number of bits that covers the size. Results outside
+     * the sequence are mapped again (cycle walking), which takes less than four steps on average.
+     */
+    public SeedSource shuffle(long key) {
+        SeedSource base = this;
+        long n = base.size();
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, n - 1));
+        int half = Math.min(31, (bits + 1) / 2);
+        long halfMask = (1L << half) - 1;
+        return new SeedSource() {
+            public long size() {
+                return n;
+            }
+
+            public long get(long index) {
+                long x = index;
+                do {
+                    long l = x >>> half;
+                    long r = x & halfMask;
+                    for (int round = 0; round < 4; round++) {
+                        long f = mix(r + key * 0x9E3779B97F4A7C15L + round) & halfMask;
+                        long t = l ^ f;
+                        l = r;
+                        r = t;
+                    }
+                    x = (l << half) | r;
+                } while (x >= n);
+                return base.get(x);
+            }
+        };
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Positions 0, stride, 2*stride, ..., then 1, stride + 1, ..., and so on.
+     */
+    public SeedSource stride(long stride) {
+        SeedSource base = this;
+        long n = base.size();
+        long s = Math.max(1, Math.min(stride, n));
+        long q = n / s;
+        long rem = n % s;
+        return new SeedSource() {
+            public long size() {
+                return n;
+            }
+
+            public long get(long index) {
+                //The first rem columns have q + 1 seeds, the others q
+                long c, r;
+                if (index < rem * (q + 1)) {
+                    c = index / (q + 1);
+                    r = index % (q + 1);
+                } else {
+                    long j = index - rem * (q + 1);
+                    c = rem + j / q;
+                    r = j % q;
+                }
+                return base.get(c + r * s);
+            }
+        };
+    }
+
+    /**
+     * Only the seeds accepted by the filter. Its size is counted once, when needed, testing
+     * every seed of this source.
+     */
+    public SeedSource filter(LongPredicate accept) {
+        SeedSource base = this;
+        return new SeedSource() {
+            private final AtomicLong cursor = new AtomicLong();
+            private long size = -1;
+
+            public synchronized long size() {
+                if (size < 0) {
+                    size = 0;
+                    for (long i = 0; i < base.size(); i++) {
+                        if (accept.test(base.get(i))) size++;
+                    }
+                }
+                return size;
+            }
+
+            //Claims positions of the base source, skipping rejected seeds
+            public long claim() {
+                long n = base.size();
+                while (true) {
+                    long i = cursor.getAndIncrement();
+                    if (i >= n) return -1;
+                    if (accept.test(base.get(i))) return i;
+                }
+            }
+
+            //Position of the base source, as returned by claim()
+            public long get(long index) {
+                return base.get(index);
+            }
+
+            public long count(long max) {
+                long n = base.size();
+                long c = 0;
+                for (long i = 0; i < n && c < max; i++) {
+                    if (accept.test(base.get(i))) c++;
+                }
+                return c;
+            }
+
+            public long first() {
+                long n = base.size();
+                for (long i = 0; i < n; i++) {
+                    long seed = base.get(i);
+                    if (accept.test(seed)) return seed;
+                }
+                throw new IllegalStateException("No seeds left");
+            }
+
+            public List<Long> toList() {
+                List<Long> l = new ArrayList<Long>();
+                for (long i = 0; i < base.size(); i++) {
+                    long seed = base.get(i);
+                    if (accept.test(seed)) l.add(seed);
+                }
+                return l;
+            }
+        };
+    }
+}
@@ -0,0 +1,280 @@
+package com.topcoder.marathon;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Line reader for the solution output, working directly on bytes. Lines are split into
+ * tokens by offsets and parsed into primitives, so reading a turn doesn't create any objects,
+ * unless the line is requested as a String. A line is only copied if it crosses the end of
+ * the read buffer. For a memory mapped file (see map()), each line is taken from the mapping
+ * with a single bulk copy, so the parsing loops always work on a plain array.
+ *
+ * Line terminators are the same as BufferedReader ("\n", "\r" or "\r\n").
+ */
+class SolutionReader implements Closeable {
+    private static final byte[] lineSeparator = System.lineSeparator().getBytes();
+    private final InputStream in;
+    private final byte[] buffer;
+    private final ByteBuffer source;
+    private int pos, limit;
+    private boolean skipLF;
+
+    // Current line is data[lineStart, lineEnd), either in the read buffer or copied to line
+    private byte[] data;
+    private int lineStart, lineEnd;
+    private byte[] line = new byte[256];
+    private String lineString;
+
+    private int[] tokenStart = new int[64];
+    private int[] tokenEnd = new int[64];
+    private int numTokens;
+
+    public SolutionReader(InputStream in) {
+        this.in = in;
+        buffer = new byte[1 << 16];
+        source = null;
+        data = buffer;
+    }
+
+    /**
+     * Reader over the whole content of a buffer (usually a memory mapped file).
+     */
+    public SolutionReader(ByteBuffer content) {
+        in = null;
+        buffer = null;
+        source = content;
+        data = line;
+        pos = content.position();
+        limit = content.limit();
+    }
+
+    /**
+     * Reader of a file, memory mapped if it is not too large.
+     */
+    public static SolutionReader map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            if (size < Integer.MAX_VALUE) return new SolutionReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        return new SolutionReader(new FileInputStream(file));
+    }
+
+    /**
+     * Read the next line. Returns false at the end of the stream.
+     */
+    public boolean readLine() throws IOException {
+        lineString = null;
+        numTokens = 0;
+        if (in == null) return readMappedLine();
+        int lineLength = 0;
+        boolean any = false;
+        while (true) {
+            if (pos >= limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    setCopiedLine(lineLength);
+                    return any;
+                }
+            }
+            if (skipLF) {
+                skipLF = false;
+                if (buffer[pos] == '\n') pos++;
+                continue;
+            }
+            int start = pos;
+            while (pos < limit) {
+                byte b = buffer[pos];
+                if (b == '\n' || b == '\r') {
+                    if (!any) {
+                        // Whole line is in the buffer, no copy needed
+                        data = buffer;
+                        lineStart = start;
+                        lineEnd = pos;
+                    } else {
+                        lineLength = append(lineLength, start, pos);
+                        setCopiedLine(lineLength);
+                    }
+                    pos++;
+                    skipLF = b == '\r';
+                    return true;
+                }
+                pos++;
+            }
+            lineLength = append(lineLength, start, pos);
+            any = true;
+        }
+    }
+
+    private boolean readMappedLine() {
+        if (skipLF && pos < limit) {
+            skipLF = false;
+            if (source.get(pos) == '\n') pos++;
+        }
+        if (pos >= limit) return false;
+        int start = pos;
+        while (pos < limit) {
+            byte b = source.get(pos);
+            if (b == '\n' || b == '\r') break;
+            pos++;
+        }
+        int len = pos - start;
+        if (len > line.length) line = new byte[Math.max(line.length * 2, len)];
+        source.get(start, line, 0, len);
+        data = line;
+        lineStart = 0;
+        lineEnd = len;
+        if (pos < limit) {
+            skipLF = source.get(pos) == '\r';
+            pos++;
+        }
+        return true;
+    }
+
+    private int append(int lineLength, int from, int to) {
+        int len = to - from;
+        if (len == 0) return lineLength;
+        if (lineLength + len > line.length) line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + len));
+        System.arraycopy(buffer, from, line, lineLength, len);
+        return lineLength + len;
+    }
+
+    private void setCopiedLine(int lineLength) {
+        data = line;
+        lineStart = 0;
+        lineEnd = lineLength;
+    }
+
+    private String string(int from, int to) {
+        return new String(data, from, to - from, Charset.defaultCharset());
+    }
+
+    /**
+     * Current line as a String (created only once per line).
+     */
+    public String getLine() {
+        if (lineString == null) lineString = string(lineStart, lineEnd);
+        return lineString;
+    }
+
+    public boolean lineEquals(String s) {
+        if (s.length() != lineEnd - lineStart) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (data[lineStart + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write the current line, followed by the line separator.
+     */
+    public void writeLine(OutputStream out) throws IOException {
+        out.write(data, lineStart, lineEnd - lineStart);
+        out.write(lineSeparator);
+    }
+
+    /**
+     * Split the current line at each single space, returning the number of tokens. With
+     * trim, it matches line.trim().split(" "), otherwise line.split(" ").
+     */
+    public int tokenize(boolean trim) {
+        int from = lineStart;
+        int to = lineEnd;
+        if (trim) {
+            while (from < to && (data[from] & 0xff) <= ' ') from++;
+            while (to > from && (data[to - 1] & 0xff) <= ' ') to--;
+        }
+        numTokens = 0;
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || data[i] == ' ') {
+                if (numTokens == tokenStart.length) {
+                    tokenStart = Arrays.copyOf(tokenStart, numTokens * 2);
+                    tokenEnd = Arrays.copyOf(tokenEnd, numTokens * 2);
+                }
+                tokenStart[numTokens] = start;
+                tokenEnd[numTokens++] = i;
+                start = i + 1;
+            }
+        }
+        if (to > from) {
+            // Trailing empty tokens are removed, as in String.split()
+            while (numTokens > 0 && tokenStart[numTokens - 1] == tokenEnd[numTokens - 1]) numTokens--;
+        }
+        return numTokens;
+    }
+
+    public int getNumTokens() {
+        return numTokens;
+    }
+
+    public String getToken(int i) {
+        checkToken(i);
+        return string(tokenStart[i], tokenEnd[i]);
+    }
+
+    public int getTokenInt(int i) {
+        checkToken(i);
+        long v = parseLong(tokenStart[i], tokenEnd[i]);
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw numberFormat(tokenStart[i], tokenEnd[i]);
+        return (int) v;
+    }
+
+    public long getTokenLong(int i) {
+        checkToken(i);
+        return parseLong(tokenStart[i], tokenEnd[i]);
+    }
+
+    /**
+     * Parse the whole line as an int, as Integer.parseInt(line).
+     */
+    public int getLineInt() {
+        long v = parseLong(lineStart, lineEnd);
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw numberFormat(lineStart, lineEnd);
+        return (int) v;
+    }
+
+    private void checkToken(int i) {
+        if (i < 0 || i >= numTokens) throw new IndexOutOfBoundsException("Token " + i + " of " + numTokens);
+    }
+
+    private long parseLong(int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+        if (i >= to) throw numberFormat(from, to);
+        long v = 0;
+        for (; i < to; i++) {
+            int d = data[i] - '0';
+            if (d < 0 || d > 9) throw numberFormat(from, to);
+            if (v < (Long.MIN_VALUE + d) / 10) throw numberFormat(from, to);
+            v = v * 10 - d;
+        }
+        if (!negative) {
+            if (v == Long.MIN_VALUE) throw numberFormat(from, to);
+            v = -v;
+        }
+        return v;
+    }
+
+    private NumberFormatException numberFormat(int from, int to) {
+        return new NumberFormatException("For input string: \"" + string(from, to) + "\"");
+    }
+
+    public void close() throws IOException {
+        if (in != null) in.close();
+    }
+}
@@ -0,0 +1,130 @@
+package com.topcoder.marathon;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived solution process that handles many test cases in sequence (-multiCase). The
+ * controller keeps one per worker thread, so the process startup and warm-up are paid once
+ * per worker, instead of once per seed. Time accounting is not affected, as it only covers
+ * the intervals between startTime() and stopTime() of each case.
+ * 
+ * Protocol, around the normal input and output of each case:
+ *      tester   -> solution: "@begin <seed>", before the case input.
+ *      solution -> tester:   "@ack", after reading "@begin". Any output before it is discarded.
+ *      tester   -> solution: "@end", after the case is over (scored or failed).
+ *      solution -> tester:   "@ack", after reading "@end". Any output of the case that was 
+ *                            not read by the tester, before the "@ack", is discarded.
+ * Each "@ack" line is written first to the error stream (flushed), then to the output. The 
+ * error output is split in cases at these lines, so what the solution writes there between
+ * the two acknowledgements belongs to the case, however late it is read.
+ * The process is restarted if it dies, times out or fails to acknowledge a case.
+ */
+class SolutionServer {
+    public static final String beginCase = "@begin";
+    public static final String endCase = "@end";
+    public static final String ack = "@ack";
+    private static final long ackTimeout = 10_000;
+
+    private Process process;
+    private SolutionReader reader;
+    private OutputStream input;
+    private ErrorReader errorReader;
+
+    public boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
+    public void start(Process process, ErrorReader errorReader) {
+        discard();
+        this.process = process;
+        this.errorReader = errorReader;
+        errorReader.splitCases();
+        errorReader.start();
+        reader = new SolutionReader(process.getInputStream());
+        input = process.getOutputStream();
+    }
+
+    public Process getProcess() {
+        return process;
+    }
+
+    public SolutionReader getReader() {
+        return reader;
+    }
+
+    public OutputStream getInput() {
+        return input;
+    }
+
+    public ErrorReader getErrorReader() {
+        return errorReader;
+    }
+
+    /**
+     * Send the start of case envelope and wait for the acknowledgement. Returns false (and
+     * discards the process) if it doesn't arrive. The error reader must already be waiting
+     * for the case (ErrorReader.startCase()).
+     */
+    public boolean beginCase(long seed) {
+        return sendAndAwaitAck(beginCase + " " + seed);
+    }
+
+    /**
+     * Send the end of case envelope and wait for the acknowledgement, on the output and on the
+     * error stream. Returns false (and discards the process) if it doesn't arrive.
+     */
+    public boolean finishCase() {
+        if (!sendAndAwaitAck(endCase)) return false;
+        if (errorReader.awaitCaseEnd(ackTimeout)) return true;
+        discard();
+        return false;
+    }
+
+    private boolean sendAndAwaitAck(String line) {
+        if (!isAlive()) {
+            discard();
+            return false;
+        }
+        Process p = process;
+        TimeoutWatchdog.Entry guard = TimeoutWatchdog.arm(ackTimeout * 1_000_000, () -> p.destroy());
+        boolean ok = false;
+        try {
+            input.write((line + System.lineSeparator()).getBytes());
+            input.flush();
+            while (reader.readLine()) {
+                if (reader.lineEquals(ack)) {
+                    ok = true;
+                    break;
+                }
+            }
+        } catch (Exception e) {
+        }
+        TimeoutWatchdog.disarm(guard);
+        if (!ok) discard();
+        return ok;
+    }
+
+    public void discard() {
+        if (process == null) return;
+        try {
+            process.destroy();
+        } catch (Exception e) {
+        }
+        errorReader.close();
+        process = null;
+        reader = null;
+        input = null;
+        errorReader = null;
+    }
+
+    public void close() {
+        if (process == null) return;
+        try {
+            input.close();
+            process.waitFor(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+        }
+        discard();
+    }
+}
@@ -0,0 +1,157 @@
+package com.topcoder.marathon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Encoder for the solution input. Values are formatted directly into a byte buffer, without
+ * creating Strings, and the whole buffer is written with a single call to each target (the
+ * process input and the -saveSolInput files) on flush(), usually once per turn.
+ */
+class SolutionWriter {
+    private static final byte[] lineSeparator = System.lineSeparator().getBytes();
+    private static final int drainSize = 1 << 20;
+    private final List<OutputStream> targets;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 14);
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Targets are read at each flush, so the list can be changed by the caller.
+     */
+    public SolutionWriter(List<OutputStream> targets) {
+        this.targets = targets;
+    }
+
+    public void writeInt(int v) {
+        writeLong(v);
+    }
+
+    public void writeLong(long v) {
+        ensure(20);
+        if (v == Long.MIN_VALUE) {
+            writeAscii(String.valueOf(v));
+            return;
+        }
+        if (v < 0) {
+            buffer.put((byte) '-');
+            v = -v;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        while (n > 0) {
+            buffer.put(digits[--n]);
+        }
+    }
+
+    public void writeString(String s) {
+        int len = s.length();
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // Not plain ASCII, let the charset handle it
+                buffer.position(buffer.position() - i);
+                byte[] b = s.getBytes(Charset.defaultCharset());
+                ensure(b.length);
+                buffer.put(b);
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private void writeAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            buffer.put((byte) s.charAt(i));
+        }
+    }
+
+    public void writeChars(char[] c) {
+        writeChars(c, 0, c.length);
+    }
+
+    public void writeChars(char[] c, int off, int len) {
+        ensure(len);
+        for (int i = off; i < off + len; i++) {
+            if (c[i] >= 0x80) {
+                buffer.position(buffer.position() - (i - off));
+                writeString(new String(c, off, len));
+                return;
+            }
+            buffer.put((byte) c[i]);
+        }
+    }
+
+    public void writeChar(char c) {
+        if (c >= 0x80) {
+            writeString(String.valueOf(c));
+            return;
+        }
+        ensure(1);
+        buffer.put((byte) c);
+    }
+
+    public void newLine() {
+        ensure(lineSeparator.length);
+        buffer.put(lineSeparator);
+    }
+
+    /**
+     * One line per row.
+     */
+    public void writeGrid(char[][] grid) {
+        for (char[] row : grid) {
+            writeChars(row);
+            newLine();
+        }
+    }
+
+    /**
+     * One line per cell, row by row.
+     */
+    public void writeCells(char[][] grid) {
+        for (char[] row : grid) {
+            for (char c : row) {
+                writeChar(c);
+                newLine();
+            }
+        }
+    }
+
+    private void ensure(int n) {
+        if (buffer.remaining() >= n) return;
+        ByteBuffer b = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + n));
+        buffer.flip();
+        b.put(buffer);
+        buffer = b;
+    }
+
+    /**
+     * Write pending data to all targets, if it grew too large since the last flush.
+     */
+    public void drainIfLarge() throws IOException {
+        if (buffer.position() >= drainSize) write();
+    }
+
+    private void write() throws IOException {
+        int len = buffer.position();
+        buffer.clear();
+        if (len == 0) return;
+        for (OutputStream out : targets) {
+            out.write(buffer.array(), 0, len);
+        }
+    }
+
+    public void flush() throws IOException {
+        write();
+        for (OutputStream out : targets) {
+            out.flush();
+        }
+    }
+}
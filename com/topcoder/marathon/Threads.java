@@ -0,0 +1,55 @@
+package com.topcoder.marathon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Shared executor for the blocking I/O and callback tasks of the tester (error stream
+ * readers, test workers, visualizer callbacks). Uses virtual threads when the JVM has them
+ * (Java 21+), so many concurrent interactive tests don't need as many OS threads. Older JVMs
+ * fall back to a cached pool of daemon threads, which at least reuses idle threads.
+ */
+final class Threads {
+    private static final ExecutorService executor = createExecutor();
+
+    private Threads() {
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "Tester");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public static Future<?> execute(Runnable task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Run n copies of the task and wait until all of them are finished.
+     */
+    public static void runAll(int n, Runnable task) {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < n; i++) {
+            futures.add(executor.submit(task));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.topcoder.marathon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide watchdog for the time limits of all running testers. Deadlines are kept in a
+ * hashed timing wheel (1 ms ticks), where arm() and disarm() only link or unlink an entry,
+ * and a single daemon thread, sleeping until the earliest deadline, expires them. Expired tasks run on the shared executor, so a
+ * slow timeout callback (or process destroy) doesn't delay the other deadlines.
+ */
+class TimeoutWatchdog {
+    private static final long tickNanos = 1_000_000;
+    private static final int numSlots = 1024;
+    private static final TimeoutWatchdog instance = new TimeoutWatchdog();
+
+    static final class Entry {
+        private final long deadline;
+        private final Runnable task;
+        private long tick;
+        private int slot;
+        private Entry prev, next;
+        private boolean linked;
+
+        private Entry(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+
+    private final Entry[] slots = new Entry[numSlots];
+    private long processedTick = Math.floorDiv(System.nanoTime(), tickNanos) - 1;
+    private long nextTick = Long.MAX_VALUE;
+    private int count;
+
+    private TimeoutWatchdog() {
+        Thread thread = new Thread("TimeoutWatchdog") {
+            public void run() {
+                loop();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Run the task after the given delay, unless the returned entry is disarmed before.
+     */
+    public static Entry arm(long delayNanos, Runnable task) {
+        return instance.add(new Entry(System.nanoTime() + Math.max(0, delayNanos), task));
+    }
+
+    public static void disarm(Entry entry) {
+        if (entry != null) instance.remove(entry);
+    }
+
+    private synchronized Entry add(Entry e) {
+        // Round up, so the entry expires once its tick has fully elapsed
+        e.tick = Math.max(Math.floorDiv(e.deadline + tickNanos - 1, tickNanos) - 1, processedTick + 1);
+        e.slot = (int) (e.tick & (numSlots - 1));
+        e.next = slots[e.slot];
+        if (e.next != null) e.next.prev = e;
+        slots[e.slot] = e;
+        e.linked = true;
+        count++;
+        if (e.tick < nextTick) {
+            nextTick = e.tick;
+            notify();
+        }
+        return e;
+    }
+
+    private synchronized void remove(Entry e) {
+        if (!e.linked) return;
+        unlink(e);
+    }
+
+    private void unlink(Entry e) {
+        if (e.prev != null) e.prev.next = e.next;
+        else slots[e.slot] = e.next;
+        if (e.next != null) e.next.prev = e.prev;
+        e.prev = e.next = null;
+        e.linked = false;
+        count--;
+    }
+
+    private void loop() {
+        List<Entry> expired = new ArrayList<Entry>();
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (count == 0) {
+                        wait();
+                    } else {
+                        // The tick of the earliest entry expires once it has fully elapsed
+                        long delay = (nextTick + 1) * tickNanos - System.nanoTime();
+                        if (delay > 0) wait((delay + 999_999) / 1_000_000);
+                    }
+                } catch (InterruptedException e) {
+                }
+                // Only ticks that have fully elapsed are processed
+                long lastTick = Math.floorDiv(System.nanoTime(), tickNanos) - 1;
+                long from = processedTick + 1;
+                if (lastTick - from >= numSlots) from = lastTick - numSlots + 1;
+                for (long tick = from; tick <= lastTick; tick++) {
+                    Entry e = slots[(int) (tick & (numSlots - 1))];
+                    while (e != null) {
+                        Entry next = e.next;
+                        if (e.tick <= lastTick) {
+                            unlink(e);
+                            expired.add(e);
+                        }
+                        e = next;
+                    }
+                }
+                processedTick = Math.max(processedTick, lastTick);
+                // nextTick is not raised when entries are disarmed, so it is recomputed here
+                nextTick = Long.MAX_VALUE;
+                for (Entry e : slots) {
+                    for (; e != null; e = e.next) {
+                        nextTick = Math.min(nextTick, e.tick);
+                    }
+                }
+            }
+            for (Entry e : expired) {
+                Threads.execute(e.task);
+            }
+            expired.clear();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.topcoder.marathon;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader of transcript files (.in.z and .out.z), written with -transcript.
+ *
+ * Format (big endian):
+ *      int magic
+ *      blocks:     int compressedLength, int length, int numTurns, int length of each turn,
+ *                  Deflater data
+ *      index:      int numTurns, then for each turn: long blockOffset, int start, int length
+ *      footer:     long indexOffset, int magic
+ *
+ * Turn i of the .in file is the input sent before the i-th flush(), and turn i of the .out
+ * file is the output read after it. Any turn can be read with a single index lookup and a
+ * single block (at most 64 KB, unless a turn is larger) inflated.
+ *
+ * A file without index and footer (its writer was not closed) is read by scanning its blocks,
+ * which list their own turns, up to the last complete one.
+ *
+ * Usage: java com.topcoder.marathon.TranscriptReader file [turn]
+ */
+public class TranscriptReader implements Closeable {
+    static final int magic = 0x4d545a32; // "MTZ2"
+
+    private final RandomAccessFile file;
+    private final long indexOffset;
+    private final int numTurns;
+    // Index rebuilt from the blocks, if the file has none
+    private long[] turnOffsets;
+    private int[] turnStarts, turnLengths;
+    private final Inflater inflater = new Inflater();
+    private long cachedBlockOffset = -1;
+    private byte[] cachedBlock;
+
+    public TranscriptReader(File f) throws IOException {
+        file = new RandomAccessFile(f, "r");
+        try {
+            if (file.length() < 4 || file.readInt() != magic) throw new IOException("Not a transcript file: " + f);
+            if (hasFooter()) {
+                file.seek(file.length() - 12);
+                indexOffset = file.readLong();
+                file.seek(indexOffset);
+                numTurns = file.readInt();
+            } else {
+                indexOffset = rebuildIndex();
+                numTurns = turnOffsets.length;
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private boolean hasFooter() throws IOException {
+        long length = file.length();
+        if (length < 20) return false;
+        file.seek(length - 12);
+        long offset = file.readLong();
+        return file.readInt() == magic && offset >= 4 && offset <= length - 16;
+    }
+
+    //Read the turns listed by each complete block, returning the end of the last one
+    private long rebuildIndex() throws IOException {
+        long length = file.length();
+        long offset = 4;
+        List<long[]> turns = new ArrayList<long[]>();
+        while (offset + 12 <= length) {
+            file.seek(offset);
+            int compressedLength = file.readInt();
+            file.readInt();
+            int blockTurns = file.readInt();
+            if (compressedLength < 0 || blockTurns < 0) break;
+            long end = offset + 12 + 4L * blockTurns + compressedLength;
+            if (end > length) break;
+            int start = 0;
+            for (int i = 0; i < blockTurns; i++) {
+                int turnLength = file.readInt();
+                turns.add(new long[] {offset, start, turnLength});
+                start += turnLength;
+            }
+            offset = end;
+        }
+        turnOffsets = new long[turns.size()];
+        turnStarts = new int[turns.size()];
+        turnLengths = new int[turns.size()];
+        for (int i = 0; i < turns.size(); i++) {
+            turnOffsets[i] = turns.get(i)[0];
+            turnStarts[i] = (int) turns.get(i)[1];
+            turnLengths[i] = (int) turns.get(i)[2];
+        }
+        return offset;
+    }
+
+    /**
+     * False if the file had no index, and it was rebuilt from its blocks.
+     */
+    public boolean isComplete() {
+        return turnOffsets == null;
+    }
+
+    public static boolean isTranscript(File f) {
+        return f.getName().endsWith(".z");
+    }
+
+    public int getNumTurns() {
+        return numTurns;
+    }
+
+    /**
+     * Content of the given turn (0 based).
+     */
+    public synchronized byte[] readTurn(int turn) throws IOException {
+        if (turn < 0 || turn >= numTurns) throw new IndexOutOfBoundsException("Turn " + turn + " of " + numTurns);
+        long blockOffset = 0;
+        int start = 0, length = 0;
+        if (turnOffsets != null) {
+            blockOffset = turnOffsets[turn];
+            start = turnStarts[turn];
+            length = turnLengths[turn];
+        } else {
+            file.seek(indexOffset + 4 + 16L * turn);
+            blockOffset = file.readLong();
+            start = file.readInt();
+            length = file.readInt();
+        }
+        if (length == 0) return new byte[0];
+        byte[] block = readBlock(blockOffset);
+        byte[] b = new byte[length];
+        System.arraycopy(block, start, b, 0, length);
+        return b;
+    }
+
+    public String readTurnString(int turn) throws IOException {
+        return new String(readTurn(turn));
+    }
+
+    private byte[] readBlock(long offset) throws IOException {
+        if (offset == cachedBlockOffset) return cachedBlock;
+        file.seek(offset);
+        int compressedLength = file.readInt();
+        int length = file.readInt();
+        file.skipBytes(4 * file.readInt());
+        byte[] compressed = new byte[compressedLength];
+        file.readFully(compressed);
+        byte[] block = new byte[length];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                n += inflater.inflate(block, n, length - n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted transcript block at " + offset, e);
+        }
+        cachedBlockOffset = offset;
+        cachedBlock = block;
+        return block;
+    }
+
+    /**
+     * Whole content, decompressed block by block.
+     */
+    public InputStream openStream() {
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            long offset = 4;
+
+            public boolean hasMoreElements() {
+                return offset < indexOffset;
+            }
+
+            public InputStream nextElement() {
+                try {
+                    synchronized (TranscriptReader.this) {
+                        byte[] block = readBlock(offset);
+                        file.seek(offset);
+                        int compressedLength = file.readInt();
+                        file.readInt();
+                        offset += 12 + 4L * file.readInt() + compressedLength;
+                        return new ByteArrayInputStream(block);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }) {
+            public void close() throws IOException {
+                super.close();
+                TranscriptReader.this.close();
+            }
+        };
+    }
+
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: java com.topcoder.marathon.TranscriptReader file [turn]");
+            return;
+        }
+        try (TranscriptReader reader = new TranscriptReader(new File(args[0]))) {
+            if (args.length > 1) {
+                System.out.write(reader.readTurn(Integer.parseInt(args[1])));
+            } else {
+                System.out.println("Turns: " + reader.getNumTurns() + (reader.isComplete() ? "" : " (no index, rebuilt from the blocks)"));
+            }
+            System.out.flush();
+        }
+    }
+}
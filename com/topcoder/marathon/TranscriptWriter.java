@@ -0,0 +1,135 @@
+package com.topcoder.marathon;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a transcript file (-transcript), with the data compressed in blocks and an index of
+ * turns, so a single turn can be read without reading what comes before (see
+ * TranscriptReader for the format). The tester marks the end of each turn at flush().
+ * Blocks are only cut at turn boundaries, once they reach blockSize, so each turn is inside
+ * a single block. Each block also lists the lengths of its turns, so the index can be rebuilt
+ * from the blocks of a file that was not closed (e.g. the tester crashed). Compressed blocks
+ * are written by an AsyncWriter.
+ */
+class TranscriptWriter extends OutputStream {
+    private static final int blockSize = 1 << 16;
+
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] block = new byte[1 << 12];
+    private int blockLength;
+    private byte[] compressed = new byte[1 << 12];
+    private long fileOffset;
+    private int turnStart;
+
+    // Per turn: index of its block, start and length inside the uncompressed block
+    private int[] turnBlock = new int[64], turnStarts = new int[64], turnLengths = new int[64];
+    private int numTurns, blockFirstTurn;
+    private long[] blockOffsets = new long[16];
+    private int numBlocks;
+    private boolean closed;
+
+    public TranscriptWriter(File file) throws IOException {
+        out = new DataOutputStream(new AsyncWriter(file, false));
+        out.writeInt(TranscriptReader.magic);
+        fileOffset = 4;
+    }
+
+    public static String fileName(String name) {
+        return name + ".z";
+    }
+
+    public void write(int b) throws IOException {
+        ensure(1);
+        block[blockLength++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensure(len);
+        System.arraycopy(b, off, block, blockLength, len);
+        blockLength += len;
+    }
+
+    private void ensure(int n) {
+        if (blockLength + n > block.length) block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + n));
+    }
+
+    /**
+     * End the current turn (everything written since the previous call).
+     */
+    public void markTurn() throws IOException {
+        if (numTurns == turnBlock.length) {
+            turnBlock = Arrays.copyOf(turnBlock, numTurns * 2);
+            turnStarts = Arrays.copyOf(turnStarts, numTurns * 2);
+            turnLengths = Arrays.copyOf(turnLengths, numTurns * 2);
+        }
+        turnBlock[numTurns] = numBlocks;
+        turnStarts[numTurns] = turnStart;
+        turnLengths[numTurns++] = blockLength - turnStart;
+        turnStart = blockLength;
+        if (blockLength >= blockSize) writeBlock();
+    }
+
+    /**
+     * Bytes written since the last turn mark.
+     */
+    public int getPendingTurnLength() {
+        return blockLength - turnStart;
+    }
+
+    private void writeBlock() throws IOException {
+        // An empty block is still written if it has (empty) turns, so every turn has a block
+        if (blockLength == 0 && numTurns == blockFirstTurn) return;
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        int len = 0;
+        while (!deflater.finished()) {
+            if (len == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            len += deflater.deflate(compressed, len, compressed.length - len);
+        }
+        if (numBlocks == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, numBlocks * 2);
+        blockOffsets[numBlocks++] = fileOffset;
+        out.writeInt(len);
+        out.writeInt(blockLength);
+        out.writeInt(numTurns - blockFirstTurn);
+        for (int i = blockFirstTurn; i < numTurns; i++) {
+            out.writeInt(turnLengths[i]);
+        }
+        out.write(compressed, 0, len);
+        fileOffset += 12 + 4L * (numTurns - blockFirstTurn) + len;
+        blockLength = 0;
+        turnStart = 0;
+        blockFirstTurn = numTurns;
+    }
+
+    /**
+     * Write the last block (with a final turn, if anything was written after the last mark),
+     * the index and the footer.
+     */
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (getPendingTurnLength() > 0) markTurn();
+            writeBlock();
+            long indexOffset = fileOffset;
+            out.writeInt(numTurns);
+            for (int i = 0; i < numTurns; i++) {
+                out.writeLong(blockOffsets[turnBlock[i]]);
+                out.writeInt(turnStarts[i]);
+                out.writeInt(turnLengths[i]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(TranscriptReader.magic);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+}